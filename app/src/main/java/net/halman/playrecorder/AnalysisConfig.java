@@ -0,0 +1,333 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioRecord;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Random;
+
+/*
+ * Sample rate, FFT size and hop of the pitch analysis. The device native
+ * rate is preferred (no resampling in the audio stack), lower rates are
+ * used when the estimator is too slow for it. The choice is probed once
+ * per engine and stored in preferences. Dual FFT engine which is too slow
+ * even at the lowest rate is replaced by its fixed point version when that
+ * is measured faster (weak FPU), or it gets a smaller FFT.
+ */
+
+public class AnalysisConfig {
+    static final int DEFAULT_SAMPLE_RATE = 8000;
+    private static final int[] SAMPLE_RATES = {48000, 44100, 32000, 22050, 16000, 11025, DEFAULT_SAMPLE_RATE};
+    // analysis may use this part of the time between two updates
+    private static final double CPU_BUDGET = 0.5;
+    // window lengths in samples at the default rate, scaled for other rates
+    private static final int MCLEOD_WINDOW = 512;
+    private static final int SLIDING_DFT_WINDOW = 1024;
+    // worst case range used for probing, soprano recorder
+    private static final double PROBE_LOWEST_FREQ = 523.25;
+    private static final double PROBE_HIGHEST_FREQ = 3136;
+    private static final int PROBE_ROUNDS = 5;
+    private static final int FAST_WINDOW_SHIFT = 2;
+    // the longest FFT window in seconds, the bins are about 1 Hz wide
+    private static final double MAX_WINDOW_TIME = 1.1;
+    // the smallest FFT of a too slow dual FFT engine, 256 ms at 8 kHz
+    private static final int MIN_FFT_EXP = 11;
+
+    final int sample_rate;
+    final int fft_exp;
+    final int hop;
+    final int engine;
+    // measured by probe(), 0 when not measured
+    long update_nanos = 0;
+
+    AnalysisConfig(int sample_rate, int fft_exp, int hop, int engine)
+    {
+        this.sample_rate = sample_rate;
+        this.fft_exp = fft_exp;
+        this.hop = hop;
+        this.engine = engine;
+    }
+
+    /*
+     * FFT window is the longest power of two within MAX_WINDOW_TIME, from
+     * 0.68 s at 48 kHz to 1.02 s with 8192 samples at 8 kHz. Longer window
+     * at high rates would cost much more without better resolution of the
+     * notes. Hop gives constant number of updates per second for the engine.
+     */
+    static AnalysisConfig forSampleRate(int sample_rate, int engine)
+    {
+        int fft_exp = 31 - Integer.numberOfLeadingZeros((int) (sample_rate * MAX_WINDOW_TIME));
+        return new AnalysisConfig(sample_rate, fft_exp, sample_rate / updatesPerSecond(engine), engine);
+    }
+
+    static int updatesPerSecond(int engine)
+    {
+        switch (engine) {
+            case Frequency.ENGINE_MCLEOD:
+                return 8;
+            case Frequency.ENGINE_SLIDING_DFT:
+                return 20;
+            case Frequency.ENGINE_GOERTZEL:
+                return 10;
+            case Frequency.ENGINE_DUAL_FFT:
+            case Frequency.ENGINE_FIXED_FFT:
+                return 4;
+            default:
+            case Frequency.ENGINE_CONSTANT_Q:
+                return 10;
+        }
+    }
+
+    /*
+     * Engine for the value stored in preferences, stored 0 is the long /
+     * short window FFT which was the only engine before.
+     */
+    static int storedEngine(int value)
+    {
+        return value == Frequency.ENGINE_LEGACY_FFT ? Frequency.ENGINE_DUAL_FFT : value;
+    }
+
+    int fftSize()
+    {
+        return 1 << fft_exp;
+    }
+
+    /*
+     * Window of the fast estimation, the last quarter of the FFT window
+     */
+    int fastSize()
+    {
+        return 1 << (fft_exp - FAST_WINDOW_SHIFT);
+    }
+
+    /*
+     * Time between two updates in nanoseconds
+     */
+    long hopNanos()
+    {
+        return hop * 1000000000L / sample_rate;
+    }
+
+    private int scaled(int samples_at_default_rate)
+    {
+        return (int) ((long) samples_at_default_rate * sample_rate / DEFAULT_SAMPLE_RATE);
+    }
+
+    /*
+     * Estimator for the engine, dual FFT (in floating or fixed point) works
+     * on the whole fftSize() window,
+     * McLeod and sliding DFT windows keep their length in seconds, Goertzel
+     * bank and constant Q octaves use at most the whole window for the lowest
+     * notes.
+     */
+    PitchEstimator createEstimator(int engine, double lowest_freq, double highest_freq)
+    {
+        switch (engine) {
+            case Frequency.ENGINE_MCLEOD:
+                return new McLeodPitchEstimator(sample_rate, scaled(MCLEOD_WINDOW), highest_freq);
+            case Frequency.ENGINE_SLIDING_DFT:
+                return new SlidingDFTPitchEstimator(sample_rate, scaled(SLIDING_DFT_WINDOW), lowest_freq, highest_freq);
+            case Frequency.ENGINE_GOERTZEL:
+                return new GoertzelPitchEstimator(sample_rate, fftSize(), lowest_freq, highest_freq);
+            case Frequency.ENGINE_DUAL_FFT:
+                return new FFTPitchEstimator(sample_rate, fft_exp, fftSize(), lowest_freq, highest_freq);
+            case Frequency.ENGINE_FIXED_FFT:
+                return new FixedFFTPitchEstimator(sample_rate, fft_exp, fftSize(), lowest_freq);
+            default:
+            case Frequency.ENGINE_CONSTANT_Q:
+                return new ConstantQPitchEstimator(sample_rate, fftSize(), lowest_freq, highest_freq);
+        }
+    }
+
+    /*
+     * Estimator for quick reaction on the last fastSize() samples with its
+     * own FFT and window, only the dual FFT engines have one.
+     */
+    PitchEstimator createFastEstimator(int engine, double lowest_freq, double highest_freq)
+    {
+        switch (engine) {
+            case Frequency.ENGINE_DUAL_FFT:
+                return new FFTPitchEstimator(sample_rate, fft_exp - FAST_WINDOW_SHIFT, fastSize(), lowest_freq, highest_freq);
+            case Frequency.ENGINE_FIXED_FFT:
+                return new FixedFFTPitchEstimator(sample_rate, fft_exp - FAST_WINDOW_SHIFT, fastSize(), lowest_freq);
+            default:
+                return null;
+        }
+    }
+
+    /*
+     * Time of one update in nanoseconds, the best of few rounds on
+     * synthetic tone. Dual FFT engine computes long and short window.
+     */
+    long measure(int engine)
+    {
+        PitchEstimator estimator = createEstimator(engine, PROBE_LOWEST_FREQ, PROBE_HIGHEST_FREQ);
+        PitchEstimator fast = createFastEstimator(engine, PROBE_LOWEST_FREQ, PROBE_HIGHEST_FREQ);
+        int size = fftSize();
+        short[] samples = new short[size];
+        Random r = new Random(0);
+        for (int i = 0; i < size; ++i) {
+            samples[i] = (short) (8000 * Math.sin(2 * Math.PI * 880 * i / sample_rate) + 200 * r.nextGaussian());
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < PROBE_ROUNDS; ++round) {
+            long time = System.nanoTime();
+            if (fast != null) {
+                fast.estimate(samples, size - fastSize(), size);
+            }
+            if (engine == Frequency.ENGINE_SLIDING_DFT) {
+                estimator.estimate(samples, 0, hop);
+            } else {
+                estimator.estimate(samples, 0, size);
+            }
+            best = Math.min(best, System.nanoTime() - time);
+        }
+
+        return best;
+    }
+
+    private void measure()
+    {
+        update_nanos = measure(engine);
+        Log.d("FREQUENCY", "probe " + engine + " at " + sample_rate + " Hz, FFT " + fftSize() + ": " +
+                update_nanos / 1000 + " us per update");
+    }
+
+    /*
+     * The measured update fits in the CPU budget
+     */
+    boolean fits()
+    {
+        return update_nanos < hopNanos() * CPU_BUDGET;
+    }
+
+    /*
+     * The highest of the sample rates which the estimator manages within
+     * the CPU budget, the last rate is used when none of them fits.
+     */
+    static AnalysisConfig probe(int[] sample_rates, int engine)
+    {
+        AnalysisConfig config = null;
+        for (int rate: sample_rates) {
+            config = forSampleRate(rate, engine);
+            config.measure();
+            if (config.fits()) {
+                break;
+            }
+        }
+
+        return config;
+    }
+
+    /*
+     * Dual FFT which is too slow even at the lowest rate. The fixed point
+     * version is used only when it has been measured to fit and to be
+     * faster (it is much slower with FPU), otherwise the floating point
+     * FFT is made smaller until it fits.
+     */
+    static AnalysisConfig fallback(AnalysisConfig floating, AnalysisConfig fixed)
+    {
+        if (floating.fits()) {
+            return floating;
+        }
+        if (fixed.fits() && fixed.update_nanos < floating.update_nanos) {
+            return fixed;
+        }
+
+        AnalysisConfig config = floating;
+        while (!config.fits() && config.fft_exp > MIN_FFT_EXP) {
+            config = new AnalysisConfig(config.sample_rate, config.fft_exp - 1, config.hop, config.engine);
+            config.measure();
+        }
+        return config;
+    }
+
+    private static int nativeSampleRate(Context context)
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            AudioManager manager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+            String rate = manager == null ? null : manager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE);
+            if (rate != null) {
+                try {
+                    return Integer.parseInt(rate);
+                } catch (NumberFormatException e) {
+                }
+            }
+        }
+        return DEFAULT_SAMPLE_RATE;
+    }
+
+    /*
+     * Native rate first, then lower rates supported by the microphone
+     */
+    private static int[] candidateRates(int native_rate)
+    {
+        int[] rates = new int[SAMPLE_RATES.length + 1];
+        int count = 0;
+        rates[count++] = native_rate;
+        for (int rate: SAMPLE_RATES) {
+            if (rate < native_rate && AudioRecord.getMinBufferSize(rate,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT) > 0) {
+                rates[count++] = rate;
+            }
+        }
+
+        int[] result = new int[count];
+        System.arraycopy(rates, 0, result, 0, count);
+        return result;
+    }
+
+    /*
+     * Stored configuration for the engine, it is probed when the native
+     * rate differs from the one it has been probed with. The engine of the
+     * result can differ from the requested one.
+     */
+    static AnalysisConfig load(Context context, int engine)
+    {
+        int native_rate = nativeSampleRate(context);
+        SharedPreferences prefs = context.getSharedPreferences("playrecorderanalysis", 0);
+        String suffix = "-" + engine;
+        if (prefs.getInt("native-rate" + suffix, 0) == native_rate) {
+            int rate = prefs.getInt("sample-rate" + suffix, DEFAULT_SAMPLE_RATE);
+            AnalysisConfig config = forSampleRate(rate, prefs.getInt("engine" + suffix, engine));
+            int fft_exp = prefs.getInt("fft-exp" + suffix, config.fft_exp);
+            return new AnalysisConfig(config.sample_rate, fft_exp, config.hop, config.engine);
+        }
+
+        int[] rates = candidateRates(native_rate);
+        AnalysisConfig config = probe(rates, engine);
+        if (engine == Frequency.ENGINE_DUAL_FFT && !config.fits()) {
+            config = fallback(config, probe(rates, Frequency.ENGINE_FIXED_FFT));
+        }
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.putInt("native-rate" + suffix, native_rate);
+        editor.putInt("sample-rate" + suffix, config.sample_rate);
+        editor.putInt("engine" + suffix, config.engine);
+        editor.putInt("fft-exp" + suffix, config.fft_exp);
+        editor.apply();
+
+        return config;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Persistent worker thread which runs one analysis task in parallel with
+ * the analysis thread. Submitting and waiting uses volatile counters and
+ * park / unpark like AudioRingBuffer, so nothing is allocated per hop
+ * (ExecutorService would create a Future for every task).
+ */
+
+public class AnalysisWorker implements Runnable {
+    private final Thread thread;
+    private volatile Runnable task = null;
+    private volatile long submitted = 0;
+    private volatile long finished = 0;
+    private volatile Thread waiting = null;
+    private volatile Throwable failure = null;
+
+    public AnalysisWorker(String name)
+    {
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    void start()
+    {
+        thread.start();
+    }
+
+    void stop()
+    {
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Run the task on the worker, the previous one has to be awaited
+     */
+    void submit(Runnable task)
+    {
+        this.task = task;
+        failure = null;
+        submitted = submitted + 1;
+        LockSupport.unpark(thread);
+    }
+
+    /*
+     * Wait until the submitted task is finished. Returns false when the
+     * waiting thread has been interrupted.
+     */
+    boolean await()
+    {
+        waiting = Thread.currentThread();
+        while (finished != submitted) {
+            if (Thread.interrupted()) {
+                waiting = null;
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            LockSupport.park(this);
+        }
+        waiting = null;
+        return true;
+    }
+
+    /*
+     * What the last submitted task has thrown, null when it succeeded. The
+     * worker keeps running and the failed task counts as finished.
+     */
+    Throwable failure()
+    {
+        return failure;
+    }
+
+    public void run()
+    {
+        while (!Thread.currentThread().isInterrupted()) {
+            long target = submitted;
+            if (finished == target) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            try {
+                task.run();
+            } catch (Throwable e) {
+                failure = e;
+            }
+            finished = target;
+
+            Thread t = waiting;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import android.media.AudioRecord;
+import android.media.AudioTimestamp;
+import android.os.Build;
+import android.os.Process;
+
+/*
+ * Capture thread, drains AudioRecord into the ring buffer as fast as
+ * samples arrive so no audio waits in OS buffers while it is analysed.
+ * Every chunk is low pass filtered on the way, the ring holds filtered
+ * signal. Capture time of the stream is tracked from AudioRecord timestamps
+ * (or from the time the chunks arrive on old systems).
+ */
+
+public class AudioCapture implements Runnable {
+    private final AudioRecord audio_input;
+    private final AudioRingBuffer ring;
+    private final short[] chunk;
+    private volatile LowPassFilter filter;
+    private volatile long read_errors = 0;
+    private final int sample_rate;
+    private final AudioTimestamp timestamp;
+    // the stream position captured at stamp_nanos, the pair is published
+    // without locking like a seqlock, stamp_sequence is odd while it changes
+    private volatile long stamp_sequence = 0;
+    private volatile long stamp_position = 0;
+    private volatile long stamp_nanos = 0;
+
+    public AudioCapture(AudioRecord input, AudioRingBuffer ring, int chunk_size, LowPassFilter filter)
+    {
+        audio_input = input;
+        this.ring = ring;
+        this.filter = filter;
+        chunk = new short[chunk_size];
+        sample_rate = input.getSampleRate();
+        timestamp = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? new AudioTimestamp() : null;
+    }
+
+    /*
+     * New filter for the following chunks, called when the instrument changes
+     */
+    void filter(LowPassFilter filter)
+    {
+        this.filter = filter;
+    }
+
+    long readErrors()
+    {
+        return read_errors;
+    }
+
+    /*
+     * System.nanoTime() clock when the sample at stream position was
+     * captured, extrapolated from the last timestamp
+     */
+    long captureNanos(long position)
+    {
+        while (true) {
+            long sequence = stamp_sequence;
+            long nanos = stamp_nanos;
+            long stamped = stamp_position;
+            if ((sequence & 1) == 0 && sequence == stamp_sequence) {
+                return nanos + (position - stamped) * 1000000000L / sample_rate;
+            }
+        }
+    }
+
+    /*
+     * Only the capture thread writes the pair. All fields are volatile, so
+     * the reader sees the same sequence before and after only when it got
+     * both values of one stamp.
+     */
+    private void stamp(long position, long nanos)
+    {
+        long sequence = stamp_sequence;
+        stamp_sequence = sequence + 1;
+        stamp_position = position;
+        stamp_nanos = nanos;
+        stamp_sequence = sequence + 2;
+    }
+
+    private void updateStamp()
+    {
+        if (timestamp != null && audio_input.getTimestamp(timestamp, AudioTimestamp.TIMEBASE_MONOTONIC) == AudioRecord.SUCCESS) {
+            stamp(timestamp.framePosition, timestamp.nanoTime);
+        } else {
+            // the last sample has just arrived
+            stamp(ring.position(), System.nanoTime());
+        }
+    }
+
+    public void run()
+    {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        while (!Thread.currentThread().isInterrupted()) {
+            int count = audio_input.read(chunk, 0, chunk.length);
+            if (count > 0) {
+                filter.process(chunk, 0, count);
+                ring.write(chunk, count);
+                updateStamp();
+            } else if (count < 0) {
+                read_errors++;
+                if (count != AudioRecord.ERROR) {
+                    // recorder is not initialized or it is dead
+                    break;
+                }
+            }
+        }
+        // the analysis must not wait for samples which will not come
+        ring.close();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Lock free single producer / single consumer ring buffer of audio samples
+ *
+ * Producer (capture thread) only appends samples and publishes the total
+ * number of written samples through a volatile field. Consumer (analysis
+ * thread) either copies the latest window or reads samples one after
+ * another. Producer never waits, when the consumer is too slow the oldest
+ * samples are overwritten and counted as dropped. Producer which stops for
+ * good closes the ring, so the consumer does not wait for samples forever.
+ *
+ * Before copying a chunk the producer announces its end in write_start
+ * (like the sequence of a seqlock), the consumer checks it after its copy,
+ * so a chunk which is still being written invalidates the copy too.
+ *
+ * This needs the plain accesses to data ordered against write_start:
+ * the producer's stores must not be done before the announcement and the
+ * consumer's loads must be done before the check. A volatile load is only
+ * an acquire and a volatile store only a release, so each side pairs them:
+ * the producer loads write_position after storing write_start, the
+ * consumer stores consumer_fence before loading write_start. A volatile
+ * store followed by a volatile load is never reordered (StoreLoad), so
+ * it works as a full fence. VarHandle fences would say it directly, but
+ * they need API 33.
+ */
+
+public class AudioRingBuffer {
+    private final short[] data;
+    private final int mask;
+    private volatile long write_position = 0;
+    private volatile long write_start = 0;
+    // only orders the consumer's accesses to data, see above
+    private volatile long consumer_fence = 0;
+    private volatile Thread consumer = null;
+    private volatile boolean closed = false;
+
+    // consumer side
+    private long read_position = 0;
+    private volatile long dropped = 0;
+
+    /*
+     * Capacity is rounded up to power of two
+     */
+    public AudioRingBuffer(int min_capacity)
+    {
+        int capacity = Integer.highestOneBit(Math.max(min_capacity, 2) - 1) << 1;
+        data = new short[capacity];
+        mask = capacity - 1;
+    }
+
+    int capacity()
+    {
+        return data.length;
+    }
+
+    /*
+     * Number of samples written since the start
+     */
+    long position()
+    {
+        return write_position;
+    }
+
+    /*
+     * Number of samples the consumer did not get because they were overwritten
+     */
+    long dropped()
+    {
+        return dropped;
+    }
+
+    // producer
+
+    void write(short[] samples, int count)
+    {
+        // write_start equals write_position between two writes
+        long end = write_start + count;
+        write_start = end;
+        // volatile load after the store, data is not written before the announcement
+        long pos = write_position;
+        int idx = (int) (pos & mask);
+        int first = Math.min(count, data.length - idx);
+        System.arraycopy(samples, 0, data, idx, first);
+        System.arraycopy(samples, first, data, 0, count - first);
+        write_position = end;
+
+        Thread t = consumer;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /*
+     * No more samples will come (recorder failed or capture stopped)
+     */
+    void close()
+    {
+        closed = true;
+        Thread t = consumer;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    // consumer
+
+    boolean closed()
+    {
+        return closed;
+    }
+
+    /*
+     * Wait until total number of written samples reaches position.
+     * Returns false when the consumer thread has been interrupted or
+     * the ring has been closed before.
+     */
+    boolean await(long position)
+    {
+        consumer = Thread.currentThread();
+        while (write_position < position) {
+            if (closed) {
+                consumer = null;
+                return false;
+            }
+            if (Thread.interrupted()) {
+                consumer = null;
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            LockSupport.park(this);
+        }
+        consumer = null;
+        return true;
+    }
+
+    /*
+     * Copy the latest count samples into dst. Returns position
+     * of the sample following the last copied one.
+     */
+    long latest(short[] dst, int count)
+    {
+        while (true) {
+            long end = write_position;
+            long start = end - count;
+            copy(start, dst, 0, count);
+            // producer could overwrite the data while they were copied
+            if (!overwritten(start)) {
+                read_position = end;
+                return end;
+            }
+        }
+    }
+
+    /*
+     * Read next count samples into dst, waits until they are recorded.
+     * Returns false when the consumer thread has been interrupted or
+     * the ring has been closed.
+     */
+    boolean read(short[] dst, int count)
+    {
+        while (true) {
+            if (!await(read_position + count)) {
+                return false;
+            }
+
+            long oldest = write_position - data.length;
+            if (read_position < oldest) {
+                // consumer is too slow, skip overwritten samples
+                dropped += oldest - read_position;
+                read_position = oldest;
+            }
+
+            long start = read_position;
+            copy(start, dst, 0, count);
+            if (!overwritten(start)) {
+                read_position = start + count;
+                return true;
+            }
+        }
+    }
+
+    /*
+     * Position of the sample following the last one read by consumer
+     */
+    long readPosition()
+    {
+        return read_position;
+    }
+
+    /*
+     * Producer has written, or is writing, over the sample at start.
+     * Called after the copy, which is finished before the fence store.
+     */
+    private boolean overwritten(long start)
+    {
+        consumer_fence = start;
+        return write_start - start > data.length;
+    }
+
+    private void copy(long start, short[] dst, int offset, int count)
+    {
+        int idx = (int) (start & mask);
+        int first = Math.min(count, data.length - idx);
+        System.arraycopy(data, idx, dst, offset, first);
+        System.arraycopy(data, 0, dst, offset + first, count - first);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import java.util.Arrays;
+
+/*
+ * Pitch detection using multi-rate FFT with constant Q per octave
+ *
+ * The instrument range is split into octaves. Every octave is decimated as
+ * much as its highest note allows (see Decimator) and transformed by its own
+ * small FFT over the newest CYCLES periods of its lowest note, so the high
+ * octaves use short windows and react quickly while the low ones get long
+ * windows and fine bins. The spectra are read per semitone: strength of
+ * a note is the strongest bin within quarter tone of it. The fundamental is
+ * picked on the semitones (Spectrum.fundamentalNote) and its frequency is
+ * refined in cents by interpolation of the peak in its octave spectrum and
+ * by the phase advance since the last window (PhaseVocoder).
+ * The octaves have to be rebuilt when the instrument range changes.
+ *
+ * J. C. Brown: Calculation of a constant Q spectral transform,
+ * J. Acoust. Soc. Am. 1991
+ */
+
+public class ConstantQPitchEstimator implements PitchEstimator {
+    private static final int CYCLES = 80;
+    // amplitude of the weakest tone
+    private static final double MIN_AMPLITUDE = 40;
+    private static final double QUARTER_TONE = Math.pow(2, 1 / 24.0);
+
+    private final int note_count;
+    private final int octave_count;
+    private final int[] rate;
+    private final int[] length;
+    private final double[] window_sum;
+    private final Decimator[] decimator;
+    private final RealFFT[] fft;
+    private final float[][] hann;
+    private final float[][] real;
+    private final float[][] img;
+    private final float[][] power;
+    private final PhaseVocoder[] vocoder;
+    // bins within quarter tone of the note in its octave spectrum
+    private final int[] first_bin;
+    private final int[] last_bin;
+    private final double[] strength;
+    private double confidence = 0;
+
+    /*
+     * Notes are the semitones from lowest_freq to highest_freq, window_size
+     * limits the window of the lowest octave.
+     */
+    public ConstantQPitchEstimator(int sample_rate, int window_size, double lowest_freq, double highest_freq)
+    {
+        note_count = (int) Math.round(12 * Math.log(highest_freq / lowest_freq) / Math.log(2)) + 1;
+        octave_count = (note_count + 11) / 12;
+        rate = new int[octave_count];
+        length = new int[octave_count];
+        window_sum = new double[octave_count];
+        decimator = new Decimator[octave_count];
+        fft = new RealFFT[octave_count];
+        hann = new float[octave_count][];
+        real = new float[octave_count][];
+        img = new float[octave_count][];
+        power = new float[octave_count][];
+        vocoder = new PhaseVocoder[octave_count];
+        first_bin = new int[note_count];
+        last_bin = new int[note_count];
+        strength = new double[note_count];
+
+        for (int o = 0; o < octave_count; ++o) {
+            int first = 12 * o;
+            int last = Math.min(first + 11, note_count - 1);
+            double low = lowest_freq * Math.pow(2, first / 12.0);
+            double high = lowest_freq * Math.pow(2, last / 12.0) * QUARTER_TONE;
+
+            int factor = Decimator.factor(sample_rate, high);
+            rate[o] = sample_rate / factor;
+            length[o] = Math.min(window_size / factor, (int) Math.round(CYCLES * rate[o] / low));
+            decimator[o] = new Decimator(factor, length[o] * factor);
+
+            int fft_exp = 32 - Integer.numberOfLeadingZeros(length[o] - 1);
+            int size = 1 << fft_exp;
+            fft[o] = new RealFFT(fft_exp);
+            real[o] = new float[size];
+            img[o] = new float[size / 2];
+            power[o] = new float[size / 2];
+            vocoder[o] = new PhaseVocoder(sample_rate, size * factor);
+            hann[o] = new float[length[o]];
+            for (int i = 0; i < length[o]; ++i) {
+                hann[o][i] = (float) (.5 * (1 - Math.cos(2 * Math.PI * i / (length[o] - 1.0))));
+                window_sum[o] += hann[o][i];
+            }
+
+            for (int n = first; n <= last; ++n) {
+                double bin = lowest_freq * Math.pow(2, n / 12.0) * size / rate[o];
+                // notes close to the Nyquist frequency get just the last bin
+                last_bin[n] = Math.min(size / 2 - 1, (int) Math.ceil(bin * QUARTER_TONE));
+                first_bin[n] = Math.min(last_bin[n], (int) Math.floor(bin / QUARTER_TONE));
+            }
+        }
+    }
+
+    int noteCount()
+    {
+        return note_count;
+    }
+
+    /*
+     * Window of the octave in seconds
+     */
+    double windowTime(int octave)
+    {
+        return length[octave] / (double) rate[octave];
+    }
+
+    int octaveCount()
+    {
+        return octave_count;
+    }
+
+    public double confidence()
+    {
+        return confidence;
+    }
+
+    public void reset()
+    {
+        for (PhaseVocoder v: vocoder) {
+            v.reset();
+        }
+    }
+
+    public void position(long end)
+    {
+        for (PhaseVocoder v: vocoder) {
+            v.position(end);
+        }
+    }
+
+    public double estimate(short[] samples, int from, int to)
+    {
+        for (int o = 0; o < octave_count; ++o) {
+            transform(samples, from, to, o);
+        }
+
+        double max = 0;
+        confidence = 0;
+        for (int n = 0; n < note_count; ++n) {
+            float[] p = power[n / 12];
+            int peak = Spectrum.strongest(p, first_bin[n], last_bin[n] + 1);
+            // magnitude scaled to the amplitude of the sine
+            strength[n] = 2 * Math.sqrt(p[peak]) / window_sum[n / 12];
+            max = Math.max(max, strength[n]);
+        }
+
+        if (max < MIN_AMPLITUDE) {
+            // filter out very week signal
+            reset();
+            return 0;
+        }
+
+        int best = Spectrum.fundamentalNote(strength, note_count);
+        confidence = Spectrum.noteClarity(strength, note_count, best);
+        int o = best / 12;
+        float[] p = power[o];
+        int half = img[o].length;
+        int peak = Spectrum.strongest(p, first_bin[best], last_bin[best] + 1);
+        double bin = peak + Spectrum.interpolate(p, peak, 0, half);
+        // FFT has two times more bins than are stored
+        return vocoder[o].refine(real[o], img[o], half, peak, bin * rate[o] / (2.0 * half));
+    }
+
+    /*
+     * Spectrum of the octave over the newest length[o] samples and its power
+     */
+    private void transform(short[] samples, int from, int to, int o)
+    {
+        final int factor = decimator[o].factor();
+        final float[] re = real[o];
+        final float[] window = hann[o];
+        int count = Math.min((to - from) / factor, length[o]);
+        int idx = length[o] - count;
+
+        // window is aligned to the newest sample, FFT input is zero padded
+        Arrays.fill(re, 0, idx, 0f);
+        Arrays.fill(re, length[o], re.length, 0f);
+        decimator[o].process(samples, to - count * factor, to, re, idx);
+        for (int i = idx; i < length[o]; ++i) {
+            re[i] *= window[i];
+        }
+
+        fft[o].transform(re, re, img[o]);
+        final float[] im = img[o];
+        final float[] p = power[o];
+        for (int j = 0; j < im.length; ++j) {
+            p[j] = re[j] * re[j] + im[j] * im[j];
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+/*
+ * Anti alias low pass filter and downsampling by a power of two
+ *
+ * Decimation by two is done by half band FIR filter computed in polyphase
+ * form: only every second output is computed, every second tap of the
+ * filter is zero except the middle one and the taps are symmetric, so one
+ * output costs HALF_BAND_TAPS multiplications. Higher factors are cascade
+ * of these stages.
+ */
+
+public class Decimator {
+    // number of non zero taps on each side of the middle one
+    private static final int HALF_BAND_TAPS = 10;
+    // part of the decimated band which has to be free of aliases
+    private static final double PASS_BAND = 0.42;
+    private static final int MAX_FACTOR = 8;
+
+    private final int factor;
+    private final int stages;
+    private final float[] taps = new float[HALF_BAND_TAPS];
+    private final float[] work_a;
+    private final float[] work_b;
+
+    /*
+     * max_input is the longest block passed to process()
+     */
+    public Decimator(int factor, int max_input)
+    {
+        this.factor = factor;
+        stages = Integer.numberOfTrailingZeros(factor);
+        work_a = new float[factor > 1 ? max_input : 0];
+        work_b = new float[factor > 2 ? max_input / 2 : 0];
+
+        // Hann windowed sinc with cut off at quarter of sample rate,
+        // tap k is at distance 2k + 1 from the middle one (0.5)
+        int half = 2 * HALF_BAND_TAPS;
+        double sum = 0;
+        for (int k = 0; k < HALF_BAND_TAPS; ++k) {
+            double t = 2 * k + 1;
+            double sinc = Math.sin(Math.PI * t / 2) / (Math.PI * t);
+            double w = 0.5 * (1 + Math.cos(Math.PI * t / half));
+            taps[k] = (float) (sinc * w);
+            sum += 2 * taps[k];
+        }
+
+        // unity gain on DC
+        for (int k = 0; k < HALF_BAND_TAPS; ++k) {
+            taps[k] *= 0.5 / sum;
+        }
+    }
+
+    /*
+     * Highest power of two factor which keeps the instrument range
+     * (plus quarter tone) inside the pass band of decimated signal.
+     */
+    static int factor(int sample_rate, double highest_freq)
+    {
+        double top = highest_freq * Math.pow(2, 1 / 24.0);
+        int result = 1;
+        while (result < MAX_FACTOR && top <= PASS_BAND * sample_rate / (result * 2)) {
+            result *= 2;
+        }
+        return result;
+    }
+
+    int factor()
+    {
+        return factor;
+    }
+
+    /*
+     * Decimate samples[from] .. samples[to - 1] into out starting at
+     * out_from. Returns number of output samples, the last one belongs to
+     * the newest input samples. Samples outside of the range are taken as
+     * zero.
+     */
+    int process(short[] samples, int from, int to, float[] out, int out_from)
+    {
+        int count = to - from;
+        if (stages == 0) {
+            for (int i = 0; i < count; ++i) {
+                out[out_from + i] = samples[from + i];
+            }
+            return count;
+        }
+
+        for (int i = 0; i < count; ++i) {
+            work_a[i] = samples[from + i];
+        }
+
+        float[] src = work_a;
+        float[] dst = work_b;
+        for (int s = 0; s < stages - 1; ++s) {
+            count = halfBand(src, count, dst, 0);
+            float[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+
+        return halfBand(src, count, out, out_from);
+    }
+
+    private int halfBand(float[] src, int count, float[] dst, int dst_from)
+    {
+        int result = count / 2;
+        // output m is centered on input sample center_0 + 2m
+        int center = count - 1 - 2 * (result - 1);
+        final int n = HALF_BAND_TAPS;
+        for (int m = 0; m < result; ++m, center += 2) {
+            float y = 0.5f * src[center];
+            if (center - (2 * n - 1) >= 0 && center + (2 * n - 1) < count) {
+                for (int k = 0; k < n; ++k) {
+                    y += taps[k] * (src[center - 2 * k - 1] + src[center + 2 * k + 1]);
+                }
+            } else {
+                // window edges, missing samples are zero
+                for (int k = 0; k < n; ++k) {
+                    int l = center - 2 * k - 1;
+                    int r = center + 2 * k + 1;
+                    y += taps[k] * ((l >= 0 ? src[l] : 0) + (r < count ? src[r] : 0));
+                }
+            }
+            dst[dst_from + m] = y;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+/*
+ * In place radix-2 fast Fourier transformation
+ *
+ * Bit reverse permutation and twiddle factors (cos/sin) are computed once
+ * in the constructor, the transformation itself does not call any
+ * trigonometric function.
+ */
+
+public class FFT {
+    private final int fft_size;
+    private final int fft_exp;
+    private final int[] fft_bitreverse;
+    private final float[] twiddle_cos;
+    private final float[] twiddle_sin;
+
+    public FFT(int exp)
+    {
+        fft_exp = exp;
+        fft_size = 1 << exp;
+        fft_bitreverse = new int[fft_size];
+        twiddle_cos = new float[fft_size / 2];
+        twiddle_sin = new float[fft_size / 2];
+
+        for (int i = fft_size - 1; i >= 0; --i) {
+            int k = 0;
+            for (int j = 0; j < fft_exp; ++j) {
+                k *= 2;
+                if ((i & ( 1 << j )) != 0) {
+                    k += 1;
+                }
+            }
+            fft_bitreverse[i] = k;
+        }
+
+        // butterflies of one block share the same twiddle factor,
+        // block with index b uses angle 2 * PI * bitreverse(2b) / n
+        for (int b = 0; b < fft_size / 2; ++b) {
+            double ang = Math.PI * 2 * fft_bitreverse[2 * b] / fft_size;
+            twiddle_cos[b] = (float) Math.cos(ang);
+            twiddle_sin[b] = (float) Math.sin(ang);
+        }
+    }
+
+    int size()
+    {
+        return fft_size;
+    }
+
+    int exp()
+    {
+        return fft_exp;
+    }
+
+    /*
+     * Forward transformation of first size() items of real and img.
+     * When normalize is false, the 1/n scaling is skipped. This is
+     * fine when we are interested in the peak position only.
+     */
+    void transform(float[] real, float[] img, boolean normalize)
+    {
+        int n, n2, i, k, kn2, b;
+        float s, c, tr, ti;
+
+        n = fft_size;
+        n2 = n / 2;
+
+        for (int l = 0; l < fft_exp; ++l) {
+            b = 0;
+            for (k = 0; k < n; k += n2) {
+                c = twiddle_cos[b];
+                s = twiddle_sin[b];
+                ++b;
+                for (i = 0; i < n2; ++i, ++k) {
+                    kn2 = k + n2;
+                    tr = real[kn2] * c + img[kn2] * s;
+                    ti = img[kn2] * c - real[kn2] * s;
+                    real[kn2] = real[k] - tr;
+                    img[kn2] = img[k] - ti;
+                    real[k] += tr;
+                    img[k] += ti;
+                }
+            }
+            n2 /= 2;
+        }
+
+        for (k = 0; k < n; ++k) {
+            i = fft_bitreverse[k];
+            if (i <= k)
+                continue;
+            tr = real[k];
+            ti = img[k];
+            real[k] = real[i];
+            img[k] = img[i];
+            real[i] = tr;
+            img[i] = ti;
+        }
+
+        if (normalize) {
+            float f = 1.0f / n;
+            for (i = 0; i < n; ++i) {
+                real[i] *= f;
+                img[i] *= f;
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import java.util.Arrays;
+
+/*
+ * Pitch detection using fast Fourier transformation
+ *
+ * Samples are low pass filtered by LowPassFilter on capture, here they are
+ * multiplied by Hann window and the pitch is
+ * the strongest bin of the spectrum, refined by interpolation of its neighbours.
+ * When the strongest bin is a harmonic, the fundamental is picked instead.
+ * With overlapping windows the peak is refined by PhaseVocoder.
+ *
+ * pitch detection blog http://blog.bjornroche.com/2012/07/frequency-detection-using-fft-aka-pitch.html
+ * c source for article above https://github.com/bejayoharen/guitartuner/blob/master/src/main.c
+ */
+
+public class FFTPitchEstimator implements PitchEstimator {
+    private final int sample_rate;
+    private final int FFT_SIZE;
+    private final int buffer_size;
+    private final float[] buffer_real;
+    private final float[] buffer_img;
+    private final float[] power;
+    private final float[] hann_window;
+    private final RealFFT fft;
+    private final double lowest_bin;
+    private final Decimator decimator;
+    private final PhaseVocoder vocoder;
+    private double confidence = 0;
+
+    /*
+     * Signal is downsampled when the instrument range allows it, FFT size
+     * is reduced by the same factor so the bins stay sample_rate / 2^fft_exp
+     * Hz wide.
+     */
+    public FFTPitchEstimator(int sample_rate, int fft_exp, int buffer_size, double lowest_freq, double highest_freq)
+    {
+        int factor = Decimator.factor(sample_rate, highest_freq);
+        decimator = new Decimator(factor, buffer_size);
+        fft_exp -= Integer.numberOfTrailingZeros(factor);
+        this.sample_rate = sample_rate / factor;
+        this.buffer_size = buffer_size / factor;
+        FFT_SIZE = 1 << fft_exp;
+        buffer_real = new float[this.buffer_size];
+        buffer_img = new float[FFT_SIZE / 2];
+        power = new float[FFT_SIZE / 2];
+        hann_window = new float[this.buffer_size];
+        buildHannWindow();
+        fft = new RealFFT(fft_exp);
+        vocoder = new PhaseVocoder(sample_rate, FFT_SIZE * factor);
+        // allow quarter tone below the lowest note
+        lowest_bin = lowest_freq * Math.pow(2, -1 / 24.0) * FFT_SIZE / this.sample_rate;
+    }
+
+    public double confidence()
+    {
+        return confidence;
+    }
+
+    public void reset()
+    {
+        vocoder.reset();
+    }
+
+    public void position(long end)
+    {
+        vocoder.position(end);
+    }
+
+    /*
+     * Samples are placed at the end of the analysed buffer, the beginning
+     * of the buffer is filled with zeros when there are not enough samples.
+     */
+    public double estimate(short[] samples, int from, int to)
+    {
+        prepareBuffers(samples, from, to);
+        applyFFT();
+        return peak();
+    }
+
+    private void applyFFT()
+    {
+        // samples are real, imaginary part is not needed as input
+        fft.transform(buffer_real, buffer_real, buffer_img);
+    }
+
+    private void buildHannWindow()
+    {
+        for (int i = 0; i < buffer_size; ++i) {
+            hann_window[i] = (float) (.5 * (1 - Math.cos(2 * Math.PI * i / (buffer_size - 1.0))));
+        }
+    }
+
+    int decimation()
+    {
+        return decimator.factor();
+    }
+
+    /*
+     * Conversion to float (with decimation when it is enabled) and Hann
+     * window. Samples come already low pass filtered from the capture, the
+     * leading part of the buffer is zeroed when there are not enough samples.
+     */
+    private void prepareBuffers(short[] samples, int from, int to)
+    {
+        final int factor = decimator.factor();
+        int count = Math.min((to - from) / factor, buffer_size);
+        int idx = buffer_size - count;
+
+        Arrays.fill(buffer_real, 0, idx, 0f);
+
+        if (factor > 1) {
+            decimator.process(samples, to - count * factor, to, buffer_real, idx);
+            for (int i = idx; i < buffer_size; ++i) {
+                buffer_real[i] *= hann_window[i];
+            }
+        } else {
+            int offset = to - buffer_size;
+            for (int i = idx; i < buffer_size; ++i) {
+                buffer_real[i] = samples[offset + i] * hann_window[i];
+            }
+        }
+    }
+
+    private double peak()
+    {
+        int size = FFT_SIZE / 2;
+        // complex spectrum is kept for the phase vocoder
+        for (int j = 0; j < size; ++j) {
+            power[j] = buffer_real[j] * buffer_real[j] + buffer_img[j] * buffer_img[j];
+        }
+
+        //find the peak
+        int maxIndex = Spectrum.strongest(power, 0, size);
+        confidence = 0;
+
+        // spectrum is not normalized, scale the strength back
+        double maxVal = power[maxIndex] / ((double) FFT_SIZE * FFT_SIZE);
+        if (maxVal < Spectrum.MIN_STRENGTH) {
+            // filter out very week signal
+            vocoder.reset();
+            return 0;
+        }
+
+        double bin = maxIndex + Spectrum.interpolate(power, maxIndex, 0, size);
+        double freq = vocoder.refine(buffer_real, buffer_img, size, maxIndex, sample_rate * bin / FFT_SIZE);
+        bin = Spectrum.fundamental(power, size, freq * FFT_SIZE / sample_rate, lowest_bin);
+        confidence = Spectrum.clarity(power, 0, size, maxIndex);
+        return (sample_rate * bin) / (double)( FFT_SIZE );
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+/*
+ * In place radix-2 fast Fourier transformation in fixed point
+ *
+ * Counterpart of FFT for devices with weak floating point unit. Data are
+ * integers, twiddle factors are Q15. Before every stage the whole block is
+ * shifted right when needed to keep the values below 2^14 (block floating
+ * point), so the products fit into int and nothing overflows. The number
+ * of shifts is the binary exponent of the result.
+ */
+
+public class FixedFFT {
+    static final int Q = 15;
+    // values entering a stage are kept below this
+    static final int LIMIT = 1 << 14;
+    private static final int ROUND = 1 << (Q - 1);
+
+    private final int fft_size;
+    private final int fft_exp;
+    private final int[] fft_bitreverse;
+    private final int[] twiddle_cos;
+    private final int[] twiddle_sin;
+
+    public FixedFFT(int exp)
+    {
+        fft_exp = exp;
+        fft_size = 1 << exp;
+        fft_bitreverse = new int[fft_size];
+        twiddle_cos = new int[fft_size / 2];
+        twiddle_sin = new int[fft_size / 2];
+
+        for (int i = fft_size - 1; i >= 0; --i) {
+            int k = 0;
+            for (int j = 0; j < fft_exp; ++j) {
+                k *= 2;
+                if ((i & ( 1 << j )) != 0) {
+                    k += 1;
+                }
+            }
+            fft_bitreverse[i] = k;
+        }
+
+        // same block order as in FFT
+        for (int b = 0; b < fft_size / 2; ++b) {
+            double ang = Math.PI * 2 * fft_bitreverse[2 * b] / fft_size;
+            twiddle_cos[b] = toQ15(Math.cos(ang));
+            twiddle_sin[b] = toQ15(Math.sin(ang));
+        }
+    }
+
+    static int toQ15(double value)
+    {
+        return (int) Math.round(value * ((1 << Q) - 1));
+    }
+
+    int size()
+    {
+        return fft_size;
+    }
+
+    /*
+     * Shift first count items of real and img right until they are below
+     * LIMIT, returns the number of shifts
+     */
+    static int normalize(int[] real, int[] img, int count)
+    {
+        int max = 0;
+        for (int i = 0; i < count; ++i) {
+            max |= Math.abs(real[i]) | Math.abs(img[i]);
+        }
+
+        int shift = 0;
+        while ((max >> shift) >= LIMIT) {
+            ++shift;
+        }
+
+        if (shift > 0) {
+            // ties are rounded to even, rounding half up would add
+            // the same bias to every sample and it sums up in DC bin
+            int round = (1 << (shift - 1)) - 1;
+            for (int i = 0; i < count; ++i) {
+                real[i] = (real[i] + round + ((real[i] >> shift) & 1)) >> shift;
+                img[i] = (img[i] + round + ((img[i] >> shift) & 1)) >> shift;
+            }
+        }
+
+        return shift;
+    }
+
+    /*
+     * Forward transformation of first size() items of real and img, the
+     * result is real and img multiplied by 2^returned value. Input must
+     * be below 2^15 in absolute value.
+     */
+    int transform(int[] real, int[] img)
+    {
+        int n, n2, i, k, kn2, b;
+        int s, c, tr, ti;
+        int shift = 0;
+
+        n = fft_size;
+        n2 = n / 2;
+
+        for (int l = 0; l < fft_exp; ++l) {
+            shift += normalize(real, img, n);
+            b = 0;
+            for (k = 0; k < n; k += n2) {
+                c = twiddle_cos[b];
+                s = twiddle_sin[b];
+                ++b;
+                for (i = 0; i < n2; ++i, ++k) {
+                    kn2 = k + n2;
+                    tr = (real[kn2] * c + img[kn2] * s + ROUND) >> Q;
+                    ti = (img[kn2] * c - real[kn2] * s + ROUND) >> Q;
+                    real[kn2] = real[k] - tr;
+                    img[kn2] = img[k] - ti;
+                    real[k] += tr;
+                    img[k] += ti;
+                }
+            }
+            n2 /= 2;
+        }
+
+        for (k = 0; k < n; ++k) {
+            i = fft_bitreverse[k];
+            if (i <= k)
+                continue;
+            tr = real[k];
+            ti = img[k];
+            real[k] = real[i];
+            img[k] = img[i];
+            real[i] = tr;
+            img[i] = ti;
+        }
+
+        return shift;
+    }
+}
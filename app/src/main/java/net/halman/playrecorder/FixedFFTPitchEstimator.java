@@ -0,0 +1,121 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+import java.util.Arrays;
+
+/*
+ * Pitch detection using fast Fourier transformation in fixed point
+ *
+ * Same analysis as FFTPitchEstimator for devices with weak floating point
+ * unit: 16 bit samples are multiplied by Q15 Hann window and transformed
+ * by FixedRealFFT without any conversion. Floating point is used only on
+ * the power spectrum for the peak picking in Spectrum. The signal is not
+ * decimated, the integer path works on the captured rate.
+ */
+
+public class FixedFFTPitchEstimator implements PitchEstimator {
+    private final int sample_rate;
+    private final int FFT_SIZE;
+    private final int buffer_size;
+    private final int[] buffer_real;
+    private final int[] buffer_img;
+    private final int[] hann_window;
+    private final float[] power;
+    private final FixedRealFFT fft;
+    private final double lowest_bin;
+    private double confidence = 0;
+
+    public FixedFFTPitchEstimator(int sample_rate, int fft_exp, int buffer_size, double lowest_freq)
+    {
+        this.sample_rate = sample_rate;
+        this.buffer_size = buffer_size;
+        FFT_SIZE = 1 << fft_exp;
+        buffer_real = new int[FFT_SIZE];
+        buffer_img = new int[FFT_SIZE / 2];
+        power = new float[FFT_SIZE / 2];
+        hann_window = new int[buffer_size];
+        for (int i = 0; i < buffer_size; ++i) {
+            hann_window[i] = FixedFFT.toQ15(.5 * (1 - Math.cos(2 * Math.PI * i / (buffer_size - 1.0))));
+        }
+        fft = new FixedRealFFT(fft_exp);
+        // allow quarter tone below the lowest note
+        lowest_bin = lowest_freq * Math.pow(2, -1 / 24.0) * FFT_SIZE / sample_rate;
+    }
+
+    public double confidence()
+    {
+        return confidence;
+    }
+
+    public void reset()
+    {
+        // every estimation works on the whole window, nothing to forget
+    }
+
+    public void position(long end)
+    {
+        // windows are analysed independently
+    }
+
+    /*
+     * Samples are placed at the end of the analysed buffer, the beginning
+     * of the buffer is filled with zeros when there are not enough samples.
+     */
+    public double estimate(short[] samples, int from, int to)
+    {
+        int count = Math.min(to - from, buffer_size);
+        int idx = buffer_size - count;
+        int offset = to - buffer_size;
+
+        Arrays.fill(buffer_real, 0, idx, 0);
+        for (int i = idx; i < buffer_size; ++i) {
+            buffer_real[i] = (samples[offset + i] * hann_window[i]) >> FixedFFT.Q;
+        }
+        Arrays.fill(buffer_real, buffer_size, FFT_SIZE, 0);
+
+        int shift = fft.transform(buffer_real, buffer_real, buffer_img);
+        return peak(shift);
+    }
+
+    private double peak(int shift)
+    {
+        int size = FFT_SIZE / 2;
+        for (int j = 0; j < size; ++j) {
+            float re = buffer_real[j];
+            float im = buffer_img[j];
+            power[j] = re * re + im * im;
+        }
+
+        int maxIndex = Spectrum.strongest(power, 0, size);
+        confidence = 0;
+
+        // spectrum is scaled down by the transformation and not normalized
+        double maxVal = Math.scalb((double) power[maxIndex], 2 * shift) / ((double) FFT_SIZE * FFT_SIZE);
+        if (maxVal < Spectrum.MIN_STRENGTH) {
+            // filter out very week signal
+            return 0;
+        }
+
+        double bin = maxIndex + Spectrum.interpolate(power, maxIndex, 0, size);
+        bin = Spectrum.fundamental(power, size, bin, lowest_bin);
+        confidence = Spectrum.clarity(power, 0, size, maxIndex);
+        return (sample_rate * bin) / (double) FFT_SIZE;
+    }
+}
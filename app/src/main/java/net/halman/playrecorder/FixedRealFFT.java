@@ -0,0 +1,99 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+/*
+ * Fast Fourier transformation of real signal in fixed point
+ *
+ * Same packing as RealFFT on top of FixedFFT, the untangling is done
+ * in integers with Q15 twiddle factors as well.
+ */
+
+public class FixedRealFFT {
+    private static final int ROUND = 1 << (FixedFFT.Q - 1);
+
+    private final int fft_size;
+    private final FixedFFT half_fft;
+    private final int[] half_real;
+    private final int[] half_img;
+    private final int[] twiddle_cos;
+    private final int[] twiddle_sin;
+
+    public FixedRealFFT(int exp)
+    {
+        fft_size = 1 << exp;
+        half_fft = new FixedFFT(exp - 1);
+        half_real = new int[fft_size / 2];
+        half_img = new int[fft_size / 2];
+        twiddle_cos = new int[fft_size / 2];
+        twiddle_sin = new int[fft_size / 2];
+        for (int k = 0; k < fft_size / 2; ++k) {
+            double ang = Math.PI * 2 * k / fft_size;
+            twiddle_cos[k] = FixedFFT.toQ15(Math.cos(ang));
+            twiddle_sin[k] = FixedFFT.toQ15(Math.sin(ang));
+        }
+    }
+
+    int size()
+    {
+        return fft_size;
+    }
+
+    /*
+     * Transform first size() samples of input, they must be below 2^15 in
+     * absolute value. Bins 0 .. size() / 2 - 1 multiplied by 2^-returned
+     * value are stored into real and img. The input array can be the same
+     * as real.
+     */
+    int transform(int[] input, int[] real, int[] img)
+    {
+        int n2 = fft_size / 2;
+
+        for (int i = 0; i < n2; ++i) {
+            half_real[i] = input[2 * i];
+            half_img[i] = input[2 * i + 1];
+        }
+
+        int shift = half_fft.transform(half_real, half_img);
+        // the halving below needs one bit less than a stage
+        shift += FixedFFT.normalize(half_real, half_img, n2);
+
+        for (int k = 0; k < n2; ++k) {
+            int m = (n2 - k) & (n2 - 1);
+            int a = half_real[k];
+            int b = half_img[k];
+            int c = half_real[m];
+            int d = half_img[m];
+
+            // even part (Z[k] + conj(Z[m])) / 2, odd part (Z[k] - conj(Z[m])) / 2i
+            int er = (a + c) >> 1;
+            int ei = (b - d) >> 1;
+            int or = (b + d) >> 1;
+            int oi = (c - a) >> 1;
+
+            // X[k] = even + exp(-2 * PI * i * k / n) * odd
+            int wr = twiddle_cos[k];
+            int wi = -twiddle_sin[k];
+            real[k] = er + ((wr * or - wi * oi + ROUND) >> FixedFFT.Q);
+            img[k] = ei + ((wr * oi + wi * or + ROUND) >> FixedFFT.Q);
+        }
+
+        return shift;
+    }
+}
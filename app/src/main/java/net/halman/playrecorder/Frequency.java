@@ -17,292 +17,459 @@
 
 package net.halman.playrecorder;
 
+import android.content.Context;
 import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.MediaRecorder;
-import android.os.Handler;
 import android.util.Log;
 
-import java.lang.reflect.Array;
-import java.util.Arrays;
-
 /*
- * This code detects sound frequency (AKA pitch detection) using fast Fourier transformation
+ * This code detects sound frequency (AKA pitch detection), the detection itself is
+ * done by PitchEstimator (constant Q multi-rate FFT, McLeod NSDF, sliding DFT,
+ * Goertzel filter bank or long and short fast Fourier transformation, in floating
+ * or fixed point for devices with weak FPU).
+ * Samples are captured by AudioCapture on its own thread into AudioRingBuffer.
+ * Sample rate, window and hop come from AnalysisConfig. Estimates are turned into
+ * stable notes by NoteDecoder.
  * Credit to the other sources and authors
  *
  * android example of recorder https://stackoverflow.com/questions/8499042/android-audiorecord-example
- * pitch detection blog http://blog.bjornroche.com/2012/07/frequency-detection-using-fft-aka-pitch.html
- * c source for article above https://github.com/bejayoharen/guitartuner/blob/master/src/main.c
  */
 
 public class Frequency implements Runnable {
-    public static final int MSG_FREQUENCY = 1;
-
-    private final int sample_rate = 8000;
-    private final int FFT_SIZE = 8192;
-    private final int FFT_EXP = 13;
+    // stored value of the long / short window FFT before ENGINE_DUAL_FFT
+    // was introduced, see AnalysisConfig.storedEngine()
+    static final int ENGINE_LEGACY_FFT = 0;
+    public static final int ENGINE_MCLEOD = 1;
+    public static final int ENGINE_SLIDING_DFT = 2;
+    public static final int ENGINE_GOERTZEL = 3;
+    public static final int ENGINE_DUAL_FFT = 4;
+    public static final int ENGINE_FIXED_FFT = 5;
+    public static final int ENGINE_CONSTANT_Q = 6;
+
+    private final int CAPTURE_CHUNK = 256;
+    // smoothing of the measured analysis time
+    private static final double TIME_SMOOTHING = 0.2;
+    private static final double HALF_SEMITONE = Math.log(2) / 24;
+    // one waiting in the slot, one read by the UI and one being filled
+    private static final int EVENTS = 3;
+
+    private final Context context;
+    private int engine;
+    private double lowest_freq;
+    private double highest_freq;
+    // instrument range requested by range(), applied on the analysis thread
+    private volatile int range_lowest_100;
+    private volatile int range_highest_100;
+    private volatile int range_version = 0;
+    private int applied_range_version = 0;
+    private AudioCapture audio_capture;
+    private AnalysisConfig config;
+    private int sample_rate;
     private short[] buffer;
-    private double[] buffer_real;
-    private double[] buffer_img;
-    private double[] hann_window = null;
     private int buffer_size;
     private AudioRecord audio_input;
 
-    private int[] fft_bitreverse = null;
-    private Handler message_handler;
-    private int buffer_recording_step = 1;
-
-    public Frequency(Handler h, int highest_frequency_100)
+    private PitchEstimator precise_estimator;
+    private PitchEstimator fast_estimator = null;
+    private PitchSlot slot;
+    // scale and instrument the pitch is resolved for, replaced by the UI
+    private volatile NoteSnapshot notes = null;
+    private int stream_hop = 0;
+    private AudioRingBuffer ring;
+    private long next_position;
+    private volatile int latency_ms = 0;
+    private volatile int skipped_updates = 0;
+
+    // average time of the long analysis and how often it runs
+    private volatile double precise_nanos = 0;
+    private int precise_interval = 1;
+    private int precise_countdown = 0;
+    private volatile int last_freq100 = 0;
+    private volatile double last_confidence = 0;
+    private AnalysisWorker worker = null;
+
+    // long window analysis run by the worker
+    private final Runnable precise_task = new Runnable() {
+        public void run()
+        {
+            long time = System.nanoTime();
+            last_freq100 = (int) (precise_estimator.estimate(buffer, 0, buffer_size) * 100);
+            last_confidence = precise_estimator.confidence();
+            precise_nanos = smooth(precise_nanos, System.nanoTime() - time);
+        }
+    };
+    private SilenceGate gate;
+    private boolean gated = false;
+    private NoteDecoder decoder;
+    private final double[] candidates = new double[2];
+    private final double[] confidences = new double[2];
+    private int decoded_freq100 = 0;
+    private double decoded_confidence = 0;
+    private final PitchEventPool events = new PitchEventPool(EVENTS);
+    private volatile long dropped_events = 0;
+
+    /*
+     * Nothing heavy is done here, the analysis is configured (and probed
+     * when needed) on the analysis thread in run().
+     */
+    public Frequency(Context context, PitchSlot slot, int lowest_frequency_100, int highest_frequency_100, int engine)
     {
-        message_handler = h;
-        int minSize = 4 * AudioRecord.getMinBufferSize(sample_rate, AudioFormat.CHANNEL_IN_MONO,  AudioFormat.ENCODING_PCM_16BIT);
-
-        buffer_size = minSize < FFT_SIZE ? FFT_SIZE : minSize;
-        buffer = new short[buffer_size];
-        buffer_real = new double[buffer_size];
-        buffer_img = new double[buffer_size];
-        buildHannWindow();
-        initFFT();
-        computeSecondOrderLowPassParameters(highest_frequency_100 / 100.0);
-        audio_input = new AudioRecord(MediaRecorder.AudioSource.MIC, sample_rate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, buffer_size);
+        this.context = context.getApplicationContext();
+        this.slot = slot;
+        this.engine = engine;
+        lowest_freq = lowest_frequency_100 / 100.0;
+        highest_freq = highest_frequency_100 / 100.0;
     }
 
-    private void initFFT()
+    /*
+     * Instrument or scale has changed, estimators (like the Goertzel bank)
+     * and the filter are rebuilt for the new range before the next hop.
+     */
+    public void range(int lowest_frequency_100, int highest_frequency_100)
     {
-        fft_bitreverse = new int[FFT_SIZE];
-
-        for (int i = (1 << FFT_EXP) - 1; i >= 0; --i) {
-            int k = 0;
-            for (int j = 0; j < FFT_EXP; ++j) {
-                k *= 2;
-                if ((i & ( 1 << j )) != 0) {
-                    k += 1;
-                }
-            }
-            fft_bitreverse[i] = k;
-        }
+        range_lowest_100 = lowest_frequency_100;
+        range_highest_100 = highest_frequency_100;
+        range_version = range_version + 1;
     }
 
-    private void applyFFT()
+    /*
+     * Scale or instrument has changed, the next update is resolved with
+     * the new snapshot
+     */
+    public void notes(NoteSnapshot snapshot)
     {
+        notes = snapshot;
+    }
 
-        int n, n2, i, k, kn2, l, p;
-        double ang, s, c, tr, ti;
-        for(i = 0; i < FFT_SIZE; ++i) {
-            buffer_img[i] = 0.0;
-        }
-
-        n = 1 << FFT_EXP;
-        n2 = n / 2;
-
-
-        for (l = 0; l < FFT_EXP; ++l) {
-            for (k = 0; k < n; k += n2) {
-                for(i = 0; i < n2; ++i, ++k) {
-                    p = fft_bitreverse[k / n2];
-                    ang = Math.PI * 2 * p / n;
-                    c = Math.cos(ang);
-                    s = Math.sin(ang);
+    private void applyRange()
+    {
+        applied_range_version = range_version;
+        lowest_freq = range_lowest_100 / 100.0;
+        highest_freq = range_highest_100 / 100.0;
+        createEstimators();
+        audio_capture.filter(new LowPassFilter(sample_rate, highest_freq));
+    }
 
-                    kn2 = k + n2;
-                    // if (inversion_transformation) { s = -s; }
+    private void createEstimators()
+    {
+        precise_estimator = config.createEstimator(engine, lowest_freq, highest_freq);
+        // the other engines are precise on short windows, only dual FFT has fast estimator
+        fast_estimator = config.createFastEstimator(engine, lowest_freq, highest_freq);
+        decoder = new NoteDecoder(lowest_freq, highest_freq, AnalysisConfig.updatesPerSecond(engine));
+    }
 
-                    tr = buffer_real[kn2] * c + buffer_img[kn2] * s;
-                    ti = buffer_img[kn2] * c - buffer_real[kn2] * s;
-                    buffer_real[kn2] = buffer_real[k] - tr;
-                    buffer_img[kn2] = buffer_img[k] - ti;
-                    buffer_real[k] += tr;
-                    buffer_img[k] += ti;
-                }
-            }
-            n2 /= 2;
+    private void setup()
+    {
+        config = AnalysisConfig.load(context, engine);
+        // dual FFT may be replaced by the fixed point one on slow devices
+        engine = config.engine;
+        sample_rate = config.sample_rate;
+        // analysed window is exactly what the FFT sees
+        buffer_size = config.fftSize();
+        buffer = new short[buffer_size];
+        createEstimators();
+        if (fast_estimator != null) {
+            worker = new AnalysisWorker("precise pitch");
         }
-
-        for ( k = 0; k < n; ++k ) {
-            i = fft_bitreverse[k];
-            if ( i <= k )
-                continue;
-            tr = buffer_real[k];
-            ti = buffer_img[k];
-            buffer_real[k] = buffer_real[i];
-            buffer_img[k] = buffer_img[i];
-            buffer_real[i] = tr;
-            buffer_img[i] = ti;
+        if (engine == ENGINE_SLIDING_DFT) {
+            // spectrum is updated incrementally, estimator gets just the new samples
+            stream_hop = config.hop;
         }
 
-        // Finally, multiply each value by 1/n, if this is the forward transform.
-        // if (! inversion_transformation)
-        {
-            double f;
+        // capture buffer is independent on the analysed window
+        int capture_size = Math.max(4 * AudioRecord.getMinBufferSize(sample_rate, AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT), 4 * CAPTURE_CHUNK);
+        audio_input = new AudioRecord(MediaRecorder.AudioSource.MIC, sample_rate, AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT, capture_size);
+        // keep some history for the window plus space for samples recorded while it is analysed
+        ring = new AudioRingBuffer(2 * buffer_size);
+        next_position = buffer_size;
+        gate = new SilenceGate(AnalysisConfig.updatesPerSecond(engine));
+    }
 
-            f = 1.0 / n;
-            for( i = 0; i < n ; ++i ) {
-                buffer_real[i] *= f;
-                buffer_img[i] *= f;
-            }
-        }
+    /*
+     * Capture latency of the last estimation, samples recorded while the
+     * analysis was waiting or running
+     */
+    public int latencyMs()
+    {
+        return latency_ms;
     }
 
-    private void buildHannWindow()
+    /*
+     * Samples lost because the analysis did not keep up with the capture
+     */
+    public long droppedSamples()
     {
-        hann_window = new double[buffer_size];
-        for (int i = 0; i < buffer_size; ++i) {
-            hann_window[i] = .5 * (1 - Math.cos(2 * Math.PI * i / (buffer_size - 1.0)));
-        }
+        return ring.dropped();
     }
 
-    private void recordSample() {
-        switch(buffer_recording_step) {
-            default:
-            case 1:
-                audio_input.read(buffer, 0, buffer_size);
-                break;
-            case 2:
-                System.arraycopy(buffer, buffer_size / 2, buffer, 0, buffer_size / 2);
-                audio_input.read(buffer, buffer_size / 2, buffer_size / 2);
-                break;
-            case 4:
-                System.arraycopy(buffer, buffer_size / 4, buffer, 0, buffer_size * 3 / 4);
-                audio_input.read(buffer, buffer_size * 3 / 4, buffer_size / 4);
-                break;
-        }
+    /*
+     * Updates not sent because the UI held all events
+     */
+    public long droppedEvents()
+    {
+        return dropped_events;
     }
 
-    private void prepareBuffers(boolean last_quarter)
+    /*
+     * Updates left out because the analysis was late
+     */
+    public int skippedUpdates()
     {
-        Arrays.fill(buffer_img, 0.0);
-        Arrays.fill(buffer_real, 0.0);
+        return skipped_updates;
+    }
 
-        int idx = 0;
-        if (last_quarter) {
-            idx = buffer_size * 3 / 4;
+    /*
+     * Wait for next hop and fill buffer, returns position of the last sample
+     * or -1 when the thread has been interrupted.
+     *
+     * Updates are planned on the sample clock every config.hop samples, so
+     * the rate does not drift with the analysis time. When the analysis is
+     * late by more than a hop, the missed updates are skipped instead of
+     * being computed on stale windows.
+     */
+    private long recordSample() {
+        if (stream_hop > 0) {
+            if (!ring.read(buffer, stream_hop)) {
+                return -1;
+            }
+            return ring.readPosition();
         }
 
-        for(int i = idx; i < buffer_size; ++i) {
-            buffer_real[i] = buffer[i];
+        long behind = ring.position() - next_position;
+        if (behind >= config.hop) {
+            long missed = behind / config.hop;
+            skipped_updates += (int) missed;
+            next_position += missed * config.hop;
         }
-    }
-
-    private double[] low_pass_parameter_a = {0, 0};
-    private double[] low_pass_parameter_b = {0, 0, 0};
 
-    private void computeSecondOrderLowPassParameters(double highest_freq)
-    {
-        double a0;
-        double w0 = 2 * Math.PI * highest_freq / sample_rate;
-        double cosw0 = Math.cos(w0);
-        double sinw0 = Math.sin(w0);
-        //double alpha = sinw0/2;
-        double alpha = sinw0 / 2 * Math.sqrt(2);
-
-        a0   = 1 + alpha;
-        low_pass_parameter_a[0] = (-2 * cosw0) / a0;
-        low_pass_parameter_a[1] = (1 - alpha) / a0;
-        low_pass_parameter_b[0] = ((1 - cosw0) / 2) / a0;
-        low_pass_parameter_b[1] = (1 - cosw0) / a0;
-        low_pass_parameter_b[2] = low_pass_parameter_b[0];
+        if (!ring.await(next_position)) {
+            return -1;
+        }
+        long end = ring.latest(buffer, buffer_size);
+        next_position += config.hop;
+        return end;
     }
 
-    private double processSecondOrderFilter(double x, double[] mem)
+    /*
+     * The long window analysis is run only every precise_interval updates
+     * when it does not fit into the hop, the short one keeps the update rate.
+     */
+    private void schedulePrecise()
     {
-        double ret = low_pass_parameter_b[0] * x + low_pass_parameter_b[1] * mem[0] + low_pass_parameter_b[2] * mem[1]
-                - low_pass_parameter_a[0] * mem[2] - low_pass_parameter_a[1] * mem[3] ;
-
-        mem[1] = mem[0];
-        mem[0] = x;
-        mem[3] = mem[2];
-        mem[2] = ret;
-
-        return ret;
+        precise_interval = Math.max(1, (int) Math.ceil(precise_nanos / config.hopNanos()));
     }
 
-    private void lowPass()
+    /*
+     * Both estimates are candidates for the note decoder. The reported
+     * frequency is the candidate matching the decided note, so the
+     * intonation is kept, or the last one which matched it. A candidate
+     * without confidence (long window result repeated between its updates)
+     * neither votes nor is reported.
+     */
+    private int decode(int freq100, double confidence, int freq100_low_precision, double confidence_low_precision)
     {
-        double[] mem1 = {0, 0, 0, 0};
-        double[] mem2 = {0, 0, 0, 0};
+        candidates[0] = freq100 / 100.0;
+        candidates[1] = freq100_low_precision / 100.0;
+        confidences[0] = freq100 > 0 ? confidence : 0;
+        confidences[1] = freq100_low_precision > 0 ? confidence_low_precision : 0;
+        int note = decoder.step(candidates, confidences, 2);
+        if (note == NoteDecoder.SILENCE) {
+            decoded_freq100 = 0;
+            decoded_confidence = 0;
+            return 0;
+        }
+
+        double note_freq = decoder.noteFrequency(note);
+        for (int c = 0; c < candidates.length; ++c) {
+            if (confidences[c] > 0 && Math.abs(Math.log(candidates[c] / note_freq)) < HALF_SEMITONE) {
+                decoded_freq100 = (int) (candidates[c] * 100);
+                decoded_confidence = confidences[c];
+                return decoded_freq100;
+            }
+        }
 
-        for(int i = 0; i < buffer_size; ++i) {
-            buffer_real[i] = processSecondOrderFilter(buffer_real[i], mem1);
-            buffer_real[i] = processSecondOrderFilter(buffer_real[i], mem2);
+        if (decoded_freq100 <= 0 || Math.abs(Math.log(decoded_freq100 / 100.0 / note_freq)) >= HALF_SEMITONE) {
+            decoded_freq100 = (int) (note_freq * 100);
         }
+        return decoded_freq100;
     }
 
-    private void applyWindow()
+    private static double smooth(double average, long value)
     {
-        for(int i = 0; i < buffer_size; ++i) {
-            buffer_real[i] *= hann_window[i];
-        }
+        return average == 0 ? value : average + TIME_SMOOTHING * (value - average);
     }
 
-    private double peak()
+    /*
+     * Result of the update for the UI, the UI takes the newest one when it
+     * draws the next frame. It is left out when the UI did not recycle the
+     * previous events yet.
+     */
+    private void send(int freq100, long end, long analysis_nanos)
     {
-        //find the peak
-        double maxVal = -1;
-        int maxIndex = -1;
-        for( int j=0; j<FFT_SIZE/2; ++j ) {
-            double v = buffer_real[j] * buffer_real[j] + buffer_img[j] * buffer_img[j] ;
-            if( v > maxVal ) {
-                maxVal = v;
-                maxIndex = j;
-            }
+        PitchEvent event = events.obtain();
+        if (event == null) {
+            dropped_events++;
+            return;
         }
 
-        Log.d("FREQUENCY", "strength " + maxVal);
-        if (maxVal < 100) {
-            // filter out very week signal
-            return 0;
+        event.frequency = freq100 / 100.0;
+        event.confidence = freq100 > 0 ? decoded_confidence : 0;
+        // the last event is sent also when the setup failed
+        event.rms = gate == null ? 0 : gate.rms();
+        event.capture_nanos = audio_capture == null ? 0 : audio_capture.captureNanos(end);
+        event.analysis_nanos = analysis_nanos;
+        NoteSnapshot snapshot = notes;
+        if (snapshot != null) {
+            snapshot.resolve(freq100, event);
+        } else {
+            event.playable = false;
+            event.note = null;
+            event.cents = 0;
         }
-
-        return (sample_rate * maxIndex) / (double)( FFT_SIZE );
+        slot.publish(event);
     }
 
     public void run() {
         long time_elapsed;
+        long end;
         int freq100;
         int freq100_low_precision;
+        double confidence;
+        double confidence_low_precision;
 
+        Thread capture = null;
         try {
+            // probing or the recorder can fail, it ends the analysis as any other failure
+            setup();
+            // instrument range is kept, everything above is attenuated before the analysis
+            LowPassFilter filter = new LowPassFilter(sample_rate, highest_freq);
+            audio_capture = new AudioCapture(audio_input, ring, CAPTURE_CHUNK, filter);
+            capture = new Thread(audio_capture);
             audio_input.startRecording();
+            capture.start();
+            if (worker != null) {
+                worker.start();
+            }
             while (!Thread.currentThread().isInterrupted()) {
-                recordSample();
-                time_elapsed = System.currentTimeMillis();
-
-                // calculate FFT on whole 1second sample to get good precision for tunning
-                prepareBuffers(false);
-                lowPass();
-                applyWindow();
-                applyFFT();
-                freq100 = (int) (peak() * 100);
-
-                // calculate FFT on last 0.25second sample to get better reaction on sound change
-                prepareBuffers(true);
-                lowPass();
-                applyWindow();
-                applyFFT();
-                freq100_low_precision = (int) (peak() * 100);
-                time_elapsed = System.currentTimeMillis() - time_elapsed;
-
-                // check whether we can calculate FFT 4 x per second
-                if (time_elapsed < 100) {
-                    buffer_recording_step = 4;
-                } else if (time_elapsed < 200) {
-                    buffer_recording_step = 2;
+                end = recordSample();
+                if (end < 0) {
+                    if (ring.closed()) {
+                        Log.w("FREQUENCY", "audio capture failed, read errors " + audio_capture.readErrors());
+                    }
+                    break;
+                }
+                if (applied_range_version != range_version) {
+                    applyRange();
+                }
+                time_elapsed = System.nanoTime();
+
+                boolean silent = stream_hop > 0 ? gate.silent(buffer, 0, stream_hop) :
+                        gate.silent(buffer, buffer_size - config.hop, buffer_size);
+                if (silent) {
+                    // nobody plays, the spectral work is skipped, zero is still reported
+                    // every hop so the UI can let the pointer go (see IntonationPointer)
+                    gated = true;
+                    precise_countdown = 0;
+                    // gate is sure about the silence, the decoder does not delay it
+                    decoder.reset();
+                    decoded_freq100 = 0;
+                    freq100 = 0;
+                    freq100_low_precision = 0;
+                    confidence = 0;
+                    confidence_low_precision = 0;
+                } else if (stream_hop > 0) {
+                    if (gated) {
+                        // samples of the silence were not fed in
+                        precise_estimator.reset();
+                    }
+                    freq100 = (int) (precise_estimator.estimate(buffer, 0, stream_hop) * 100);
+                    freq100_low_precision = freq100;
+                    confidence = precise_estimator.confidence();
+                    confidence_low_precision = confidence;
+                } else if (fast_estimator == null) {
+                    // estimator takes just the end of the buffer it needs, one pass per hop
+                    precise_estimator.position(end);
+                    freq100 = (int) (precise_estimator.estimate(buffer, 0, buffer_size) * 100);
+                    freq100_low_precision = freq100;
+                    confidence = precise_estimator.confidence();
+                    confidence_low_precision = confidence;
                 } else {
-                    buffer_recording_step = 1;
+                    // calculate FFT on whole 1second sample to get good precision for tunning,
+                    // it runs on the worker while this thread does the short one,
+                    // buffer is not touched until both are finished
+                    boolean precise = precise_countdown <= 0;
+                    if (precise) {
+                        precise_estimator.position(end);
+                        worker.submit(precise_task);
+                    }
+
+                    // calculate FFT on last 0.25second sample to get better reaction on sound change
+                    fast_estimator.position(end);
+                    freq100_low_precision = (int) (fast_estimator.estimate(buffer, buffer_size - config.fastSize(), buffer_size) * 100);
+                    confidence_low_precision = fast_estimator.confidence();
+
+                    if (precise) {
+                        if (!worker.await()) {
+                            break;
+                        }
+                        if (worker.failure() != null) {
+                            // the hop is dropped, the next one runs the long window again
+                            Log.w("FREQUENCY", "precise estimation failed", worker.failure());
+                            continue;
+                        }
+                        schedulePrecise();
+                        precise_countdown = precise_interval;
+                    }
+                    --precise_countdown;
+                    freq100 = last_freq100;
+                    // the decoder has already counted this result in its update hop
+                    confidence = precise ? last_confidence : 0;
+                }
+                if (!silent) {
+                    gated = false;
+                    freq100 = decode(freq100, confidence, freq100_low_precision, confidence_low_precision);
+                }
+                time_elapsed = System.nanoTime() - time_elapsed;
+                latency_ms = (int) ((ring.position() - end) * 1000 / sample_rate);
+
+                if (Log.isLoggable("FREQUENCY", Log.DEBUG)) {
+                    // building the strings allocates, skip it unless it is printed
+                    Log.d("FREQUENCY", "freq100 " + freq100 + " freq100lp " + freq100_low_precision);
+                    Log.d("FREQUENCY", "calculation time " + time_elapsed / 1000000 + " latency " + latency_ms +
+                            " dropped " + ring.dropped() + " skipped " + skipped_updates +
+                            " rms " + (int) gate.rms() + " noise " + (int) gate.noiseFloor() +
+                            " precise interval " + precise_interval);
                 }
-                Log.d("FREQUENCY","freq100 " + freq100 + " freq100lp " + freq100_low_precision);
-                Log.d("FREQUENCY","calculation time " + time_elapsed);
 
-                if (message_handler != null) {
-                    message_handler.sendMessage(message_handler.obtainMessage(MSG_FREQUENCY, freq100, freq100_low_precision));
+                if (slot != null) {
+                    send(freq100, end, time_elapsed);
                 }
             }
         } catch (Exception e) {
+            Log.w("FREQUENCY", "analysis failed", e);
         }
 
-        if (message_handler != null) {
-            message_handler.sendMessage(message_handler.obtainMessage(MSG_FREQUENCY, 0, 0));
+        if (slot != null) {
+            // analysis stopped, the UI shows no signal
+            send(0, next_position, 0);
+        }
+        if (worker != null) {
+            worker.stop();
+        }
+        if (capture != null) {
+            capture.interrupt();
+        }
+        if (audio_input != null && audio_input.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+            audio_input.stop();
+        }
+        if (capture != null) {
+            try {
+                capture.join();
+            } catch (InterruptedException e) {
+            }
         }
-        audio_input.stop();
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+/*
+ * Pitch detection using bank of Goertzel filters tuned to the notes the
+ * instrument can play
+ *
+ * Every note has three detectors, on the note and third of semitone below
+ * and above it, so the detectors form regular grid. The intonation is found
+ * by fitting parabola through log magnitudes of the strongest detector and
+ * its neighbours like in Spectrum.interpolate. Each note is analysed on the
+ * newest CYCLES periods of the signal multiplied by Hann window, so high
+ * notes use short windows. The cost grows with the range and with the
+ * length of the lowest note: for the range of one instrument the bank
+ * costs a fifth (soprano) to a half (bass) of the 8192 point FFT at 8 kHz,
+ * a range as wide as f3 .. g7 costs nearly as much as the FFT. Only the
+ * samples needed by the lowest note are decimated (see Decimator).
+ * The bank has to be rebuilt when the instrument range changes.
+ *
+ * G. Goertzel: An algorithm for the evaluation of finite trigonometric
+ * series, American Mathematical Monthly 1958
+ */
+
+public class GoertzelPitchEstimator implements PitchEstimator {
+    private static final int CYCLES = 40;
+    private static final double SPACING_CENTS = 100.0 / 3;
+    private static final int DETECTORS = 3;
+    // amplitude of the weakest tone
+    private static final double MIN_AMPLITUDE = 40;
+    private static final int HANN_TABLE_SIZE = 1024;
+
+    private final int note_count;
+    private final double[] note_freq;
+    private final int[] length;
+    private final double[] window_sum;
+    private final double[] coef;
+    private final double[] amplitude;
+    private final double[] strength;
+    private final float[] hann;
+    private final Decimator decimator;
+    private final float[] work;
+    private double confidence = 0;
+
+    /*
+     * Notes are the semitones from lowest_freq to highest_freq, window_size
+     * limits the window of the lowest notes.
+     */
+    public GoertzelPitchEstimator(int sample_rate, int window_size, double lowest_freq, double highest_freq)
+    {
+        int factor = Decimator.factor(sample_rate, highest_freq);
+        sample_rate /= factor;
+        window_size /= factor;
+
+        note_count = (int) Math.round(12 * Math.log(highest_freq / lowest_freq) / Math.log(2)) + 1;
+        note_freq = new double[note_count];
+        length = new int[note_count];
+        window_sum = new double[note_count];
+        coef = new double[note_count * DETECTORS];
+        amplitude = new double[note_count * DETECTORS];
+        strength = new double[note_count];
+
+        hann = new float[HANN_TABLE_SIZE];
+        for (int i = 0; i < HANN_TABLE_SIZE; ++i) {
+            hann[i] = (float) (.5 * (1 - Math.cos(2 * Math.PI * i / (HANN_TABLE_SIZE - 1.0))));
+        }
+
+        for (int n = 0; n < note_count; ++n) {
+            note_freq[n] = lowest_freq * Math.pow(2, n / 12.0);
+            length[n] = Math.min(window_size, (int) Math.round(CYCLES * sample_rate / note_freq[n]));
+            for (int i = 0; i < length[n]; ++i) {
+                window_sum[n] += hann[i * (HANN_TABLE_SIZE - 1) / (length[n] - 1)];
+            }
+            for (int d = 0; d < DETECTORS; ++d) {
+                double cents = (d - 1) * SPACING_CENTS;
+                double f = note_freq[n] * Math.pow(2, cents / 1200);
+                coef[n * DETECTORS + d] = 2 * Math.cos(2 * Math.PI * f / sample_rate);
+            }
+        }
+
+        // the lowest note has the longest window
+        work = new float[length[0]];
+        decimator = new Decimator(factor, length[0] * factor);
+    }
+
+    int noteCount()
+    {
+        return note_count;
+    }
+
+    public double confidence()
+    {
+        return confidence;
+    }
+
+    public void reset()
+    {
+        // every estimation works on the newest samples, nothing to forget
+    }
+
+    public void position(long end)
+    {
+        // windows are analysed independently
+    }
+
+    public double estimate(short[] samples, int from, int to)
+    {
+        // newest samples are at the end of work
+        final int factor = decimator.factor();
+        int count = Math.min((to - from) / factor, work.length);
+        decimator.process(samples, to - count * factor, to, work, work.length - count);
+
+        double max = 0;
+        confidence = 0;
+        for (int n = 0; n < note_count; ++n) {
+            detect(count, n);
+            max = Math.max(max, strength[n]);
+        }
+
+        if (max < MIN_AMPLITUDE) {
+            // filter out very week signal
+            return 0;
+        }
+
+        // strongest detector of the note and its neighbours on the grid
+        int best = Spectrum.fundamentalNote(strength, note_count);
+        confidence = Spectrum.noteClarity(strength, note_count, best);
+        int peak = best * DETECTORS + 1;
+        for (int g = peak - 2; g <= peak + 2; ++g) {
+            if (g >= 0 && g < amplitude.length && amplitude[g] > amplitude[peak]) {
+                peak = g;
+            }
+        }
+
+        // detector g is (g - 1) thirds of semitone above the lowest note
+        double position = peak - 1 + interpolate(peak);
+        return note_freq[0] * Math.pow(2, position * SPACING_CENTS / 1200);
+    }
+
+    /*
+     * Three detectors of the note run over the same windowed samples,
+     * count is the number of valid samples at the end of work
+     */
+    private void detect(int count, int n)
+    {
+        int size = Math.min(length[n], count);
+        int start = work.length - size;
+        int base = n * DETECTORS;
+        double c0 = coef[base], c1 = coef[base + 1], c2 = coef[base + 2];
+        double a1 = 0, a2 = 0, b1 = 0, b2 = 0, d1 = 0, d2 = 0;
+        int step = (HANN_TABLE_SIZE - 1) * 65536 / Math.max(1, length[n] - 1);
+        // window is aligned to the newest sample, shorter input keeps its end
+        int phase = (length[n] - size) * step;
+
+        for (int i = 0; i < size; ++i, phase += step) {
+            double x = work[start + i] * hann[phase >> 16];
+            double a = x + c0 * a1 - a2;
+            a2 = a1;
+            a1 = a;
+            double b = x + c1 * b1 - b2;
+            b2 = b1;
+            b1 = b;
+            double d = x + c2 * d1 - d2;
+            d2 = d1;
+            d1 = d;
+        }
+
+        // magnitude scaled to the amplitude of the sine
+        double scale = 2 / window_sum[n];
+        amplitude[base] = scale * Math.sqrt(Math.max(0, a1 * a1 + a2 * a2 - c0 * a1 * a2));
+        amplitude[base + 1] = scale * Math.sqrt(Math.max(0, b1 * b1 + b2 * b2 - c1 * b1 * b2));
+        amplitude[base + 2] = scale * Math.sqrt(Math.max(0, d1 * d1 + d2 * d2 - c2 * d1 * d2));
+        strength[n] = Math.max(amplitude[base + 1], Math.max(amplitude[base], amplitude[base + 2]));
+    }
+
+    /*
+     * Position of the peak relative to detector g in units of the grid
+     */
+    private double interpolate(int g)
+    {
+        if (g <= 0 || g >= amplitude.length - 1) {
+            return 0;
+        }
+
+        double a = amplitude[g - 1];
+        double b = amplitude[g];
+        double c = amplitude[g + 1];
+        if (a <= 0 || c <= 0) {
+            return 0;
+        }
+
+        a = Math.log(a);
+        b = Math.log(b);
+        c = Math.log(c);
+        double d = a - 2 * b + c;
+        if (d >= 0) {
+            return 0;
+        }
+
+        return 0.5 * (a - c) / d;
+    }
+}
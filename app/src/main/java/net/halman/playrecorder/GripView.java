@@ -79,8 +79,7 @@ public class GripView extends View {
     private String [] noteNames = null;
     private int current_orientation = Orientation.UP;
     private boolean listening = false;
-    private int delta100 = 0;
-    private int signal_detected = 0;
+    private final IntonationPointer intonation = new IntonationPointer();
 
     private final Map<GripView.Buttons, Rect> buttonPositions = new HashMap<GripView.Buttons, Rect>() {{
         put(Buttons.SWITCH, new Rect(0, grip_height - 80, 70, grip_height - 10));
@@ -217,26 +216,21 @@ public class GripView extends View {
         }
 
         Rect pos = buttonPositions.get(Buttons.MEASURE);
-        int delta_scale = delta100 / 75;
-        if (delta_scale > 40) {
-            delta_scale = 40;
-        }
-        if (delta_scale < -40) {
-            delta_scale = -40;
-        }
+        int x = pos.centerX() + intonation.offset();
 
-        int x = pos.centerX() + delta_scale;
-
-        if (signal_detected > 0) {
-            pointer = pointer_far;
-            if (delta100 < 1000 && delta100 > -1000) {
-                pointer = pointer_near;
-            }
-            if (delta100 < 500 && delta100 > -500) {
+        switch (intonation.kind()) {
+            case IntonationPointer.OK:
                 pointer = pointer_ok;
-            }
-        } else {
-            pointer = pointer_no_signal;
+                break;
+            case IntonationPointer.NEAR:
+                pointer = pointer_near;
+                break;
+            case IntonationPointer.FAR:
+                pointer = pointer_far;
+                break;
+            default:
+                pointer = pointer_no_signal;
+                break;
         }
 
         putDrawable(x, pos.top + 10, pointer, canvas, 1.0);
@@ -328,22 +322,14 @@ public class GripView extends View {
         }
     }
 
-    public void onFrequency(boolean signal_detected, int freq100, int delta100)
+    /*
+     * The view is redrawn only when the pointer moves or changes its look
+     */
+    public void onFrequency(boolean signal_detected, int freq100, int cents, long nanos)
     {
-        if (signal_detected) {
-            this.signal_detected = 3;
-        }
-
-        if (signal_detected) {
-            this.delta100 = delta100;
-        } else {
-            if (this.signal_detected > 0) {
-                this.signal_detected--;
-            } else {
-                this.delta100 /= 2;
-            }
+        if (intonation.update(signal_detected, cents, nanos)) {
+            invalidate();
         }
-        invalidate();
     }
 
     void listen(boolean l)
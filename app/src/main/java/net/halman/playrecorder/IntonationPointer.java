@@ -0,0 +1,106 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+/*
+ * State of the intonation pointer of GripView
+ *
+ * The pointer holds the last note for HOLD_NANOS without a tone (short
+ * gaps between notes), then it shows no signal and slides back to the
+ * center, its offset halves every DECAY_NANOS. Times come from the capture
+ * time of the updates, so the pointer behaves the same at any update rate
+ * (4 updates per second of the original FFT: hold for 3 updates and halve
+ * every update). It needs an update for every hop, also in silence.
+ */
+
+public class IntonationPointer {
+    static final int NO_SIGNAL = 0;
+    static final int FAR = 1;
+    static final int NEAR = 2;
+    static final int OK = 3;
+    // time without a tone before the pointer shows no signal
+    static final long HOLD_NANOS = 750000000L;
+    // half life of the offset after the hold
+    static final long DECAY_NANOS = 250000000L;
+
+    // intonation of the last note, cents from the equal temperament
+    private int cents = 0;
+    private boolean signal_detected = false;
+    private long signal_nanos = 0;
+    // the hold is over, cents slide from release_cents to zero
+    private int release_cents = 0;
+    private long release_nanos = 0;
+
+    /*
+     * nanos is the capture time of the update (PitchEvent.capture_nanos).
+     * Returns true when the pointer moves or changes its look.
+     */
+    boolean update(boolean signal_detected, int cents, long nanos)
+    {
+        int offset = offset();
+        int kind = kind();
+
+        if (signal_detected) {
+            this.signal_detected = true;
+            this.cents = cents;
+            signal_nanos = nanos;
+        } else if (this.signal_detected) {
+            if (nanos - signal_nanos >= HOLD_NANOS) {
+                this.signal_detected = false;
+                release_cents = this.cents;
+                release_nanos = nanos;
+            }
+        } else {
+            this.cents = (int) (release_cents * Math.pow(0.5, (double) (nanos - release_nanos) / DECAY_NANOS));
+        }
+
+        return offset != offset() || kind != kind();
+    }
+
+    /*
+     * Shift of the pointer from the center of the measure button, the edge
+     * is 50 cents (the next semitone is nearer)
+     */
+    int offset()
+    {
+        int delta_scale = cents * 4 / 5;
+        if (delta_scale > 40) {
+            delta_scale = 40;
+        }
+        if (delta_scale < -40) {
+            delta_scale = -40;
+        }
+
+        return delta_scale;
+    }
+
+    int kind()
+    {
+        if (!signal_detected) {
+            return NO_SIGNAL;
+        }
+        if (cents < 10 && cents > -10) {
+            return OK;
+        }
+        if (cents < 25 && cents > -25) {
+            return NEAR;
+        }
+        return FAR;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+/*
+ * Two passes of second order low pass filter (Butterworth biquad) on the
+ * incoming stream. Filter state is kept between calls, so every sample is
+ * filtered exactly once and there is no transient at hop boundaries.
+ *
+ * Robert Bristow-Johnson: Cookbook formulae for audio EQ biquad filter coefficients
+ */
+
+public class LowPassFilter {
+    private double a1;
+    private double a2;
+    private double b0;
+    private double b1;
+    private double b2;
+
+    // state of the first and the second pass
+    private double x1 = 0, x2 = 0, y1 = 0, y2 = 0;
+    private double z1 = 0, z2 = 0;
+
+    public LowPassFilter(int sample_rate, double cut_off)
+    {
+        computeSecondOrderLowPassParameters(sample_rate, cut_off);
+    }
+
+    private void computeSecondOrderLowPassParameters(int sample_rate, double highest_freq)
+    {
+        double a0;
+        // filter becomes unstable for cut off frequency close to nyquist
+        highest_freq = Math.min(highest_freq, sample_rate * 0.45);
+        double w0 = 2 * Math.PI * highest_freq / sample_rate;
+        double cosw0 = Math.cos(w0);
+        double sinw0 = Math.sin(w0);
+        //double alpha = sinw0/2;
+        double alpha = sinw0 / 2 * Math.sqrt(2);
+
+        a0   = 1 + alpha;
+        a1 = (-2 * cosw0) / a0;
+        a2 = (1 - alpha) / a0;
+        b0 = ((1 - cosw0) / 2) / a0;
+        b1 = (1 - cosw0) / a0;
+        b2 = b0;
+    }
+
+    /*
+     * Filter samples[from] .. samples[to - 1] in place
+     */
+    void process(short[] samples, int from, int to)
+    {
+        // state lives in local variables within the loop
+        double x1 = this.x1, x2 = this.x2, y1 = this.y1, y2 = this.y2;
+        double z1 = this.z1, z2 = this.z2;
+
+        for (int i = from; i < to; ++i) {
+            double x = samples[i];
+            double y = b0 * x + b1 * x1 + b2 * x2 - a1 * y1 - a2 * y2;
+            x2 = x1;
+            x1 = x;
+            // the second filter input is output of the first one
+            double z = b0 * y + b1 * y1 + b2 * y2 - a1 * z1 - a2 * z2;
+            y2 = y1;
+            y1 = y;
+            z2 = z1;
+            z1 = z;
+            // overshoot of the filter must not wrap around
+            samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(z)));
+        }
+
+        this.x1 = x1;
+        this.x2 = x2;
+        this.y1 = y1;
+        this.y2 = y2;
+        this.z1 = z1;
+        this.z2 = z2;
+    }
+
+    void reset()
+    {
+        x1 = x2 = y1 = y2 = 0;
+        z1 = z2 = 0;
+    }
+}
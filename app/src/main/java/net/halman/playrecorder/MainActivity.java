@@ -33,6 +33,7 @@ import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 import android.util.Pair;
+import android.view.Choreographer;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
@@ -57,14 +58,30 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
     public static final int MSG_FEEDBACK = 5;
     private static final int LONG_NOTE_DURATION = 2000;
     private static final int SHORT_NOTE_DURATION = 1000;
+    // pitches of a4 offered in the tuning dialog, hundredths of Hz
+    private static final int[] REFERENCES = {41500, 43000, 44000, 44200};
+    // order of R.array.engine_items
+    private static final int[] ENGINES = {
+            Frequency.ENGINE_CONSTANT_Q,
+            Frequency.ENGINE_DUAL_FFT,
+            Frequency.ENGINE_FIXED_FFT,
+            Frequency.ENGINE_MCLEOD,
+            Frequency.ENGINE_GOERTZEL,
+            Frequency.ENGINE_SLIDING_DFT
+    };
 
     RecorderApp app = null;
     ScoreView score = null;
     GripView grip = null;
     Thread frequencyAnalyzer = null;
+    Frequency frequency = null;
+    PitchSlot pitchSlot = null;
+    // note shown before the pitch update, the views are redrawn when it changes
+    Note shownNote = new Note(Note.c4, Note.Accidentals.NONE, false);
     SoftSynthesizer synthesizer = null;
     boolean keepScreenOn = false;
     boolean playSound = true;
+    int pitchEngine = Frequency.ENGINE_CONSTANT_Q;
     Promotion promotion = null;
     Long midiOffTimestamp = 0l;
     int playCounter = 0;
@@ -112,21 +129,40 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
         }
     };
 
+    /*
+     * The newest pitch is read once per display frame while listening,
+     * updates between two frames are never drawn
+     */
+    Choreographer.FrameCallback pitchFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (pitchSlot == null) {
+                return;
+            }
+
+            PitchEvent event = pitchSlot.take();
+            if (event != null) {
+                int freq100 = (int) (event.frequency * 100);
+                if (Log.isLoggable("FREQUENCY", Log.DEBUG)) {
+                    Log.d("FREQUENCY", "Frequency update: " + freq100 + " confidence " + event.confidence +
+                            " delay " + (frameTimeNanos - event.capture_nanos) / 1000000 + " ms");
+                }
+                if (midiOffTimestamp + 1500 < System.currentTimeMillis()) {
+                    onFrequency(event.playable, event.note, freq100, event.cents, event.capture_nanos);
+                } else {
+                    onFrequency(false, null, 0, 0, event.capture_nanos);
+                }
+                event.recycle();
+            }
+
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
     Handler msgHandler = new Handler(Looper.getMainLooper()) {
         @Override
         public void handleMessage(Message inputMessage) {
             switch (inputMessage.what) {
-                case Frequency.MSG_FREQUENCY: {
-                    int freq100 = inputMessage.arg1;
-                    int freq100_low_precision = inputMessage.arg2;
-                    Log.d("FREQUENCY", "Frequency update: " + freq100 + " " + freq100_low_precision);
-                    if (midiOffTimestamp + 1500 < System.currentTimeMillis()) {
-                        onFrequency(freq100, freq100_low_precision);
-                    } else {
-                        onFrequency(0, 0);
-                    }
-                    break;
-                }
                 case MSG_MIDIOFF: {
                     noteOff();
                     break;
@@ -226,6 +262,14 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
             onScale();
             return true;
         }
+        if (id == R.id.actionTuning) {
+            onTuning();
+            return true;
+        }
+        if (id == R.id.actionEngine) {
+            onEngine();
+            return true;
+        }
         if (id == R.id.actionPlaySound) {
             item.setChecked(!item.isChecked());
             onPlaySound(item.isChecked());
@@ -259,6 +303,8 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
         if (frequencyAnalyzer != null) {
             frequencyAnalyzer.interrupt();
             frequencyAnalyzer = null;
+            frequency = null;
+            stopPitchFrames();
             grip.listen(false);
         }
 
@@ -304,6 +350,19 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
         }
     }
 
+    private void updateListenRange() {
+        if (frequency != null) {
+            frequency.range(app.instrumentLowestFreq100(), app.instrumentHighestFreq100());
+            frequency.notes(app.noteSnapshot());
+        }
+    }
+
+    private void updateListenNotes() {
+        if (frequency != null) {
+            frequency.notes(app.noteSnapshot());
+        }
+    }
+
     private void updateMidiInstrument() {
         if (synthesizer == null) {
             return;
@@ -385,6 +444,7 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
         SharedPreferences.Editor editor = sharedPref.edit();
         editor.putInt("score-signature", app.signature());
         editor.putInt("score-clef", app.clefAsInt());
+        editor.putInt("reference-pitch", app.reference());
         editor.putInt("instrument-type", app.instrumentType());
         editor.putInt("recorder-fingering", app.lastRecorderFingering());
         editor.putInt("note-value", app.noteValue());
@@ -393,6 +453,7 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
         editor.putInt("grip-orientation", grip.orientation());
         editor.putBoolean("keep-screen-on", keepScreenOn);
         editor.putBoolean("play-sound", playSound);
+        editor.putInt("pitch-engine", pitchEngine);
         editor.apply();
     }
 
@@ -402,6 +463,7 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
         SharedPreferences sharedPref = getPreferences(Context.MODE_PRIVATE);
         app.signature(sharedPref.getInt("score-signature", 0));
         app.clef(sharedPref.getInt("score-clef", 0));
+        app.reference(sharedPref.getInt("reference-pitch", Scale.DEFAULT_REFERENCE));
         app.instrument(sharedPref.getInt("instrument-type", Constants.RECORDER_SOPRANO_BAROQUE));
         app.lastRecorderFingering(sharedPref.getInt("recorder-fingering", Recorder.BAROQUE));
         app.apparentNote(
@@ -412,6 +474,7 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
         grip.orientation(sharedPref.getInt("grip-orientation", Orientation.UP));
         onKeepScreenOn(sharedPref.getBoolean("keep-screen-on", false));
         onPlaySound(sharedPref.getBoolean("play-sound", true));
+        pitchEngine = AnalysisConfig.storedEngine(sharedPref.getInt("pitch-engine", Frequency.ENGINE_CONSTANT_Q));
         app.checkLimits();
     }
 
@@ -506,6 +569,7 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
                         if (Constants.isGermanRecorder(currentType)) {
                             // switch german type to baroque
                             app.instrument(currentType - 8);
+                            updateListenRange();
                             grip.invalidate();
                             score.invalidate();
                             updateTitle();
@@ -515,6 +579,7 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
                         if (Constants.isBaroqueRecorder(currentType)) {
                             // switch baroque german type to baroque
                             app.instrument(currentType + 8);
+                            updateListenRange();
                             grip.invalidate();
                             score.invalidate();
                             updateTitle();
@@ -577,6 +642,7 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
                 invalidateOptionsMenu();
                 updateTitle();
                 updateMidiInstrument();
+                updateListenRange();
             }
         });
         builder.show();
@@ -612,6 +678,7 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
         builder.setItems(R.array.scale_names, new DialogInterface.OnClickListener() {
             public void onClick(DialogInterface dialog, int which) {
                 app.signature(which - 7);
+                updateListenRange();
                 grip.invalidate();
                 score.invalidate();
             }
@@ -619,6 +686,36 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
         builder.show();
     }
 
+    public void onTuning()
+    {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.tuning_title);
+        builder.setItems(R.array.tuning_items, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int which) {
+                app.reference(REFERENCES[which]);
+                updateListenRange();
+            }
+        });
+        builder.show();
+    }
+
+    public void onEngine()
+    {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.engine_title);
+        builder.setItems(R.array.engine_items, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int which) {
+                pitchEngine = ENGINES[which];
+                if (frequencyAnalyzer != null) {
+                    // the engine is chosen when the analysis starts
+                    onListen(false);
+                    onListen(true);
+                }
+            }
+        });
+        builder.show();
+    }
+
     @Override
     public void onRequestPermissionsResult(
             int requestCode,
@@ -638,6 +735,8 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
             if (frequencyAnalyzer != null) {
                 frequencyAnalyzer.interrupt();
                 frequencyAnalyzer = null;
+                frequency = null;
+                stopPitchFrames();
             }
             grip.listen(false);
             invalidateOptionsMenu();
@@ -647,40 +746,44 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.RECORD_AUDIO}, 42);
         } else {
-            frequencyAnalyzer = new Thread(new Frequency(msgHandler, app.instrumentHighestFreq100()));
+            pitchSlot = new PitchSlot();
+            frequency = new Frequency(this, pitchSlot,
+                    app.instrumentLowestFreq100(), app.instrumentHighestFreq100(), pitchEngine);
+            frequency.notes(app.noteSnapshot());
+            frequencyAnalyzer = new Thread(frequency);
             frequencyAnalyzer.start();
+            Choreographer.getInstance().removeFrameCallback(pitchFrameCallback);
+            Choreographer.getInstance().postFrameCallback(pitchFrameCallback);
             grip.listen(true);
             invalidateOptionsMenu();
         }
     }
 
-    public void onFrequency(int freq100, int freq100_low_precision)
+    private void stopPitchFrames()
     {
+        Choreographer.getInstance().removeFrameCallback(pitchFrameCallback);
+        pitchSlot = null;
+    }
 
-        Note n = app.scale.frequencyNearestNote(freq100);
-        Note nlp = app.scale.frequencyNearestNote(freq100_low_precision);
-
-        if (nlp == null || n == null) {
-            grip.onFrequency(false, 0, 0);
+    /*
+     * Pitch already resolved by the analysis thread (see NoteSnapshot),
+     * note is the apparent one, nanos is the capture time of the update
+     */
+    public void onFrequency(boolean playable, Note note, int freq100, int cents, long nanos)
+    {
+        if (!playable) {
+            grip.onFrequency(false, 0, 0, nanos);
             return;
         }
 
-        if (app.canPlay(nlp) && ! nlp.equal(n)) {
-            freq100 = freq100_low_precision;
-            n = nlp;
-        }
-
-        if (!app.canPlay(n)) {
-            Log.d("FREQUENCY", "this sound can't be played on the instrument");
-            grip.onFrequency(false, 0, 0);
-            return;
+        shownNote.set(app.apparent_note);
+        app.apparentNote(note);
+        grip.onFrequency(true, freq100, cents, nanos);
+        if (!shownNote.equal(app.apparent_note)) {
+            Log.d("FREQUENCY", "Note: " + note.value() + " " + note.accidentals());
+            grip.invalidate();
+            score.invalidate();
         }
-
-        app.realNote(n);
-        Log.d("FREQUENCY", "Note: " + n.value() + " " + n.accidentals());
-        grip.onFrequency(true, freq100, freq100 - app.scale.noteToFrequency(n));
-        grip.invalidate();
-        score.invalidate();
     }
 
     private void onKeepScreenOn(boolean keep)
@@ -767,12 +870,14 @@ public class MainActivity extends AppCompatActivity implements ScoreView.ScoreVi
     public void onScoreViewSignatureUp()
     {
         app.signatureUp();
+        updateListenNotes();
         grip.invalidate();
     }
 
     public void onScoreViewSignatureDown()
     {
         app.signatureDown();
+        updateListenNotes();
         grip.invalidate();
     }
 
@@ -0,0 +1,215 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+/*
+ * Pitch detection using normalized square difference function (NSDF)
+ *
+ * The estimator works in time domain on a short window (tens of milliseconds)
+ * and reaches cent level precision thanks to parabolic interpolation of the
+ * NSDF peak. Period has to be at least 3 samples long, so the detection is
+ * reliable up to about one third of sample rate.
+ *
+ * Philip McLeod, Geoff Wyvill: A smarter way to find pitch
+ * http://miracle.otago.ac.nz/tartini/papers/A_Smarter_Way_to_Find_Pitch.pdf
+ */
+
+public class McLeodPitchEstimator implements PitchEstimator {
+    private static final double PEAK_THRESHOLD = 0.9;
+    private static final double MIN_CLARITY = 0.6;
+    private static final double MIN_POWER = 400;
+
+    private final int sample_rate;
+    private final int window_size;
+    private final int min_lag;
+    private final int max_lag;
+    private final float[] window;
+    private final double[] nsdf;
+    private double confidence = 0;
+
+    public McLeodPitchEstimator(int sample_rate, int window_size, double highest_freq)
+    {
+        this.sample_rate = sample_rate;
+        this.window_size = window_size;
+        // lag of highest note minus some space for interpolation
+        min_lag = Math.max(1, (int) (sample_rate / highest_freq) - 2);
+        // at least two periods have to fit into the window
+        max_lag = window_size / 2;
+        window = new float[window_size];
+        nsdf = new double[max_lag + 2];
+    }
+
+    int windowSize()
+    {
+        return window_size;
+    }
+
+    public double confidence()
+    {
+        return confidence;
+    }
+
+    public void reset()
+    {
+        // every estimation works on the whole window, nothing to forget
+    }
+
+    public void position(long end)
+    {
+        // windows are analysed independently
+    }
+
+    public double estimate(short[] samples, int from, int to)
+    {
+        int size = Math.min(to - from, window_size);
+        confidence = 0;
+        if (size < 2 * min_lag + 2) {
+            return 0;
+        }
+
+        prepareWindow(samples, to - size, size);
+        double power = 0;
+        for (int i = 0; i < size; ++i) {
+            power += window[i] * window[i];
+        }
+
+        if (power / size < MIN_POWER) {
+            // filter out very week signal
+            return 0;
+        }
+
+        int last_lag = Math.min(max_lag, size / 2);
+        computeNSDF(size, last_lag);
+        int lag = pickPeak(last_lag);
+        if (lag < 0 || nsdf[lag] < MIN_CLARITY) {
+            return 0;
+        }
+
+        // clarity of the peak is the confidence
+        confidence = Math.min(1, nsdf[lag]);
+        double period = interpolate(lag);
+
+        // short periods are refined on the peaks of their multiples,
+        // the interpolation error is divided by the number of periods
+        int periods = 1;
+        while (2 * periods * period < last_lag) {
+            int pos = (int) Math.round(2 * periods * period);
+            for (int i = pos - 1; i <= pos + 1; ++i) {
+                if (i < last_lag && nsdf[i] > nsdf[pos]) {
+                    pos = i;
+                }
+            }
+            if (pos >= last_lag || nsdf[pos] < nsdf[pos - 1] || nsdf[pos] < nsdf[pos + 1]) {
+                break;
+            }
+            periods *= 2;
+            period = interpolate(pos) / periods;
+        }
+
+        return sample_rate / period;
+    }
+
+    // parabolic interpolation of the peak position
+    private double interpolate(int lag)
+    {
+        double a = nsdf[lag - 1];
+        double b = nsdf[lag];
+        double c = nsdf[lag + 1];
+        double d = a - 2 * b + c;
+        return lag + (d == 0 ? 0 : 0.5 * (a - c) / d);
+    }
+
+    private void prepareWindow(short[] samples, int start, int size)
+    {
+        // remove DC offset, it would bias the correlation
+        double mean = 0;
+        for (int i = 0; i < size; ++i) {
+            mean += samples[start + i];
+        }
+        mean /= size;
+
+        for (int i = 0; i < size; ++i) {
+            window[i] = (float) (samples[start + i] - mean);
+        }
+    }
+
+    private void computeNSDF(int size, int last_lag)
+    {
+        // m(tau) = sum x[j]^2 + x[j + tau]^2 is updated incrementally
+        double m = 0;
+        for (int i = 0; i < size; ++i) {
+            m += 2 * window[i] * window[i];
+        }
+
+        for (int tau = 0; tau <= last_lag + 1; ++tau) {
+            double r = 0;
+            for (int j = 0; j < size - tau; ++j) {
+                r += window[j] * window[j + tau];
+            }
+            nsdf[tau] = m > 0 ? 2 * r / m : 0;
+            m -= window[tau] * window[tau] + window[size - 1 - tau] * window[size - 1 - tau];
+        }
+    }
+
+    /*
+     * Find key maxima (highest value between positive going zero crossings)
+     * and return the first one close enough to the highest of them.
+     */
+    private int pickPeak(int last_lag)
+    {
+        double highest = 0;
+        int tau = 1;
+
+        // skip the main lobe around zero lag
+        while (tau <= last_lag && nsdf[tau] > 0) {
+            ++tau;
+        }
+
+        for (int i = tau; i <= last_lag; ++i) {
+            if (nsdf[i] > highest) {
+                highest = nsdf[i];
+            }
+        }
+
+        if (highest <= 0) {
+            return -1;
+        }
+
+        double threshold = highest * PEAK_THRESHOLD;
+        while (tau <= last_lag) {
+            // find positive going zero crossing
+            while (tau <= last_lag && nsdf[tau] <= 0) {
+                ++tau;
+            }
+
+            int best = -1;
+            while (tau <= last_lag && nsdf[tau] > 0) {
+                if (tau >= min_lag && (best < 0 || nsdf[tau] > nsdf[best])) {
+                    best = tau;
+                }
+                ++tau;
+            }
+
+            if (best > 0 && nsdf[best] >= threshold) {
+                return best;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -148,14 +148,14 @@ public abstract class MusicalInstrument {
         if (lowest_note == null) {
             return null;
         }
-        return new Note(lowest_note.value() + score_offset, lowest_note.accidentals(), false);
+        return Note.of(lowest_note.value() + score_offset, lowest_note.accidentals(), false);
     }
 
     Note apparentHighestNote () {
         if (highest_note == null) {
             return null;
         }
-        return new Note(highest_note.value() + score_offset, highest_note.accidentals(), false);
+        return Note.of(highest_note.value() + score_offset, highest_note.accidentals(), false);
     }
 
     int scoreOffset()
@@ -170,12 +170,12 @@ public abstract class MusicalInstrument {
 
     Note apparentNoteToRealNote(Note n)
     {
-        return new Note(n.value() - score_offset, n.accidentals(), n.trill());
+        return Note.of(n.value() - score_offset, n.accidentals(), n.trill());
     }
 
     Note realNoteToApparentNote(Note n)
     {
-        return new Note(n.value() + score_offset, n.accidentals(), n.trill());
+        return Note.of(n.value() + score_offset, n.accidentals(), n.trill());
     }
 
     void addGrip(int noteValue, Grip grip)
@@ -241,12 +241,11 @@ public abstract class MusicalInstrument {
 
     public ArrayList<Grip> trillGrips(Scale scale, Note realNote)
     {
-        Note upper = new Note(realNote);
-        scale.noteUp(upper);
+        Note upper = scale.nextDegree(realNote);
         int idx = scale.noteAbsoluteValue(realNote);
         int idx_upper = scale.noteAbsoluteValue(upper);
         if (idx == idx_upper) {
-            scale.noteUp(upper);
+            upper = scale.nextDegree(upper);
             idx_upper = scale.noteAbsoluteValue(upper);
         }
 
@@ -260,14 +259,13 @@ public abstract class MusicalInstrument {
 
     Pair<Note,Note> trillNotes(Scale scale, Note real_note)
     {
-        Note base = new Note(real_note);
-        Note upper = new Note(base);
-        scale.noteUp(upper);
+        Note base = Note.of(real_note);
+        Note upper = scale.nextDegree(base);
 
         int idx = scale.noteAbsoluteValue(base);
         int idx_upper = scale.noteAbsoluteValue(upper);
         if (idx == idx_upper) {
-            scale.noteUp(upper);
+            upper = scale.nextDegree(upper);
         }
 
         return new Pair<>(base, upper);
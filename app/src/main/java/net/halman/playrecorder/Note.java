@@ -17,6 +17,14 @@
 
 package net.halman.playrecorder;
 
+/*
+ * Note of the score: value in semitones from c4, accidentals and trill
+ *
+ * Notes are mutable working values (like the current note of the app).
+ * Notes computed on every draw or pitch update are interned instead:
+ * of() gives shared immutable notes from a table built on class load and
+ * they cannot be changed, so the hot paths do not allocate.
+ */
 
 public class Note {
     enum Accidentals {
@@ -77,15 +85,37 @@ public class Note {
     static final int c8 = c4 + 48;
 
 
+    /* interned values c0 .. b9 */
+    private static final int FIRST_INTERNED = c4 - 48;
+    private static final int INTERNED_VALUES = 120;
+    private static final int ACCIDENTALS = Accidentals.values().length;
+    private static final Note[] interned = new Note[INTERNED_VALUES * ACCIDENTALS * 2];
+
+    static {
+        for (int i = 0; i < INTERNED_VALUES; i++) {
+            for (Accidentals a: Accidentals.values()) {
+                interned[internedIndex(i, a, false)] = new Note(FIRST_INTERNED + i, a, false, true);
+                interned[internedIndex(i, a, true)] = new Note(FIRST_INTERNED + i, a, true, true);
+            }
+        }
+    }
+
     private int _value = 0;
     private Accidentals _accidentals = Accidentals.NONE;
     private boolean _trill = false;
+    private final boolean _interned;
 
     public Note(int value, Accidentals accidentals, boolean tr)
     {
-        value (value);
-        accidentals (accidentals);
-        trill(tr);
+        this(value, accidentals, tr, false);
+    }
+
+    private Note(int value, Accidentals accidentals, boolean tr, boolean interned)
+    {
+        _value = value;
+        _accidentals = accidentals;
+        _trill = tr;
+        _interned = interned;
     }
 
     public Note(Note note)
@@ -93,6 +123,42 @@ public class Note {
         this._value = note.value();
         this._accidentals = note.accidentals();
         this._trill = note.trill();
+        _interned = false;
+    }
+
+    private static int internedIndex(int idx, Accidentals accidentals, boolean trill)
+    {
+        return (idx * ACCIDENTALS + accidentals.ordinal()) * 2 + (trill ? 1 : 0);
+    }
+
+    /*
+     * Shared immutable note, notes out of the interned range are created
+     * (and immutable as well)
+     */
+    static Note of(int value, Accidentals accidentals, boolean trill)
+    {
+        int idx = value - FIRST_INTERNED;
+        if (idx < 0 || idx >= INTERNED_VALUES) {
+            return new Note(value, accidentals, trill, true);
+        }
+        return interned[internedIndex(idx, accidentals, trill)];
+    }
+
+    static Note of(Note note)
+    {
+        return note._interned ? note : of(note._value, note._accidentals, note._trill);
+    }
+
+    boolean interned()
+    {
+        return _interned;
+    }
+
+    private void change()
+    {
+        if (_interned) {
+            throw new UnsupportedOperationException("interned note can't be changed");
+        }
     }
 
     void set(Note note)
@@ -106,6 +172,7 @@ public class Note {
 
     void set(int value, Accidentals accidentals, boolean trill)
     {
+        change();
         _value = value;
         _accidentals = accidentals;
         _trill = trill;
@@ -118,6 +185,7 @@ public class Note {
 
     void value(int value)
     {
+        change();
         _value = value;
     }
 
@@ -128,6 +196,7 @@ public class Note {
 
     void accidentals(Accidentals accidentals)
     {
+        change();
         _accidentals = accidentals;
     }
 
@@ -138,6 +207,7 @@ public class Note {
 
     void trill(boolean t)
     {
+        change();
         _trill = t;
     }
 
@@ -0,0 +1,238 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+/*
+ * Note level decoding of the pitch stream
+ *
+ * Hidden Markov model with one state for every semitone the instrument can
+ * play and one state for silence. Every update gives few pitch candidates
+ * with confidences, a note state likes candidates close to its frequency,
+ * silence likes frames without confident candidates. Changing the state
+ * costs more than one off frame, so breath noise and single wrong
+ * estimates do not make the note flicker. The most probable path is found
+ * by Viterbi algorithm with fixed lag: the decision about an update is made
+ * lag() updates later, when the path leading to it is settled enough.
+ * The lag is at most LAG_TIME. Engines with fewer updates per second
+ * (10 and less, one update is 100 ms or more) get no lag, a new note then
+ * wins over the transition cost with its second update, so the delay of
+ * such engines is bound by one update period instead (see delayMillis()).
+ *
+ * M. Mauch, S. Dixon: pYIN: A fundamental frequency estimator using
+ * probabilistic threshold distributions, ICASSP 2014
+ */
+
+public class NoteDecoder {
+    static final int SILENCE = -1;
+    // longest delay of the decision
+    private static final double LAG_TIME = 0.06;
+    // spread of the candidates around the note
+    private static final double SIGMA_CENTS = 35;
+    private static final double REACH_CENTS = 4 * SIGMA_CENTS;
+    // probabilities per update
+    private static final double NOTE_CHANGE = 0.1;
+    private static final double NOTE_OFF = 0.05;
+    private static final double NOTE_ON = 0.1;
+    // emission of notes on frames without candidates and the floor of all emissions
+    private static final double UNVOICED_NOTE = 0.3;
+    private static final double FLOOR = 0.005;
+
+    private final int note_count;
+    private final int lag;
+    private final int updates_per_second;
+    private final double[] note_freq;
+    private final double log_stay;
+    private final double log_change;
+    private final double log_off;
+    private final double log_on;
+    private final double log_silence_stay;
+    // log probability of the best path to every state, silence is the last
+    private final double[] score;
+    private final double[] next_score;
+    private final double[] emission;
+    // best previous state of every state for the last lag + 1 updates
+    private final int[][] previous;
+    private long updates = 0;
+
+    public NoteDecoder(double lowest_freq, double highest_freq, int updates_per_second)
+    {
+        note_count = (int) Math.round(12 * Math.log(highest_freq / lowest_freq) / Math.log(2)) + 1;
+        this.updates_per_second = updates_per_second;
+        // rounded down, the lag must not exceed LAG_TIME
+        lag = (int) (LAG_TIME * updates_per_second + 1e-9);
+        note_freq = new double[note_count];
+        for (int n = 0; n < note_count; ++n) {
+            note_freq[n] = lowest_freq * Math.pow(2, n / 12.0);
+        }
+
+        log_change = Math.log(NOTE_CHANGE / Math.max(1, note_count - 1));
+        log_off = Math.log(NOTE_OFF);
+        log_stay = Math.log(1 - NOTE_CHANGE - NOTE_OFF);
+        log_on = Math.log(NOTE_ON / note_count);
+        log_silence_stay = Math.log(1 - NOTE_ON);
+
+        score = new double[note_count + 1];
+        next_score = new double[note_count + 1];
+        emission = new double[note_count + 1];
+        previous = new int[lag + 1][note_count + 1];
+        reset();
+    }
+
+    /*
+     * Updates between the frame and the decision about it
+     */
+    int lag()
+    {
+        return lag;
+    }
+
+    /*
+     * Longest time between an update and the decision about it: the lag,
+     * at least one update which the note change costs without lag.
+     */
+    int delayMillis()
+    {
+        return (int) Math.ceil(1000.0 * Math.max(lag, 1) / updates_per_second);
+    }
+
+    int noteCount()
+    {
+        return note_count;
+    }
+
+    double noteFrequency(int note)
+    {
+        return note_freq[note];
+    }
+
+    /*
+     * Start again from silence
+     */
+    public void reset()
+    {
+        for (int s = 0; s < note_count; ++s) {
+            score[s] = Double.NEGATIVE_INFINITY;
+        }
+        score[note_count] = 0;
+        updates = 0;
+    }
+
+    /*
+     * Add update with count candidates (frequency in Hz and confidence
+     * 0 .. 1), returns note (index from the lowest one) or SILENCE decided
+     * for the update lag() updates back.
+     */
+    public int step(double[] freq, double[] confidence, int count)
+    {
+        computeEmission(freq, confidence, count);
+
+        // the best note and the second one are enough to find the best
+        // other note for every note
+        int best = 0;
+        int second = -1;
+        for (int s = 1; s < note_count; ++s) {
+            if (score[s] > score[best]) {
+                second = best;
+                best = s;
+            } else if (second < 0 || score[s] > score[second]) {
+                second = s;
+            }
+        }
+
+        int[] back = previous[(int) (updates % (lag + 1))];
+        int silence = note_count;
+        for (int s = 0; s < note_count; ++s) {
+            int other = s == best ? second : best;
+            double value = score[s] + log_stay;
+            int from = s;
+            if (other >= 0 && score[other] + log_change > value) {
+                value = score[other] + log_change;
+                from = other;
+            }
+            if (score[silence] + log_on > value) {
+                value = score[silence] + log_on;
+                from = silence;
+            }
+            next_score[s] = value + emission[s];
+            back[s] = from;
+        }
+
+        double value = score[silence] + log_silence_stay;
+        int from = silence;
+        if (score[best] + log_off > value) {
+            value = score[best] + log_off;
+            from = best;
+        }
+        next_score[silence] = value + emission[silence];
+        back[silence] = from;
+
+        // keep the scores around zero
+        int state = 0;
+        for (int s = 1; s <= note_count; ++s) {
+            if (next_score[s] > next_score[state]) {
+                state = s;
+            }
+        }
+        double top = next_score[state];
+        for (int s = 0; s <= note_count; ++s) {
+            score[s] = next_score[s] - top;
+        }
+
+        // trace the best path back
+        long t = updates;
+        ++updates;
+        for (int k = 0; k < lag && t - k > 0; ++k) {
+            state = previous[(int) ((t - k) % (lag + 1))][state];
+        }
+
+        return state == silence ? SILENCE : state;
+    }
+
+    private void computeEmission(double[] freq, double[] confidence, int count)
+    {
+        double voicing = 0;
+        for (int c = 0; c < count; ++c) {
+            voicing = Math.max(voicing, confidence[c]);
+        }
+
+        for (int s = 0; s < note_count; ++s) {
+            emission[s] = (1 - voicing) * UNVOICED_NOTE;
+        }
+
+        for (int c = 0; c < count; ++c) {
+            if (freq[c] <= 0) {
+                continue;
+            }
+            // only notes close to the candidate are not under the floor
+            double position = 1200 * Math.log(freq[c] / note_freq[0]) / Math.log(2);
+            int first = Math.max(0, (int) Math.ceil((position - REACH_CENTS) / 100));
+            int last = Math.min(note_count - 1, (int) Math.floor((position + REACH_CENTS) / 100));
+            for (int s = first; s <= last; ++s) {
+                double cents = position - 100 * s;
+                double p = confidence[c] * Math.exp(-cents * cents / (2 * SIGMA_CENTS * SIGMA_CENTS));
+                emission[s] = Math.max(emission[s], p);
+            }
+        }
+
+        for (int s = 0; s < note_count; ++s) {
+            emission[s] = Math.log(emission[s] + FLOOR);
+        }
+        emission[note_count] = Math.log(1 - voicing + FLOOR);
+    }
+}
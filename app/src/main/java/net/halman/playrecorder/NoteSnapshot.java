@@ -0,0 +1,86 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+/*
+ * Notes the analysis thread reports, resolved in advance for one scale and
+ * instrument
+ *
+ * The snapshot is built on the UI thread whenever the instrument or the
+ * scale changes and then only read, so the analysis thread can resolve
+ * the pitch while the user is changing the settings. Every semitone of the
+ * audible range has its real note, apparent note, frequency and whether
+ * the instrument can play it, resolving is one logarithm (see
+ * Scale.frequencyToValue) and an array lookup.
+ */
+
+public class NoteSnapshot {
+    // 20 Hz and 24 kHz, nothing is resolved out of the range
+    private static final int MIN_FREQ100 = 2000;
+    private static final int MAX_FREQ100 = 2400000;
+
+    private final Scale scale;
+    private final int first_value;
+    private final Note[] real;
+    private final Note[] apparent;
+    private final boolean[] playable;
+
+    /*
+     * The scale is copied, the instrument is only read here
+     */
+    NoteSnapshot(Scale scale, MusicalInstrument instrument)
+    {
+        this.scale = new Scale(scale.signature(), scale.clef());
+        this.scale.reference(scale.reference());
+        first_value = this.scale.frequencyNearestValue(MIN_FREQ100);
+        int count = this.scale.frequencyNearestValue(MAX_FREQ100) - first_value + 1;
+        real = new Note[count];
+        apparent = new Note[count];
+        playable = new boolean[count];
+        for (int i = 0; i < count; ++i) {
+            real[i] = this.scale.absoluteValueToNote(first_value + i);
+            apparent[i] = instrument.realNoteToApparentNote(real[i]);
+            playable[i] = instrument.canPlay(this.scale, real[i]);
+        }
+    }
+
+    /*
+     * Fill the note part of the event, the note is interned (see Note.of)
+     */
+    void resolve(int freq100, PitchEvent event)
+    {
+        int idx = -1;
+        double value = 0;
+        if (freq100 >= MIN_FREQ100 && freq100 <= MAX_FREQ100) {
+            value = scale.frequencyToValue(freq100);
+            idx = (int) Math.round(value) - first_value;
+        }
+
+        if (idx < 0 || idx >= real.length || !playable[idx]) {
+            event.playable = false;
+            event.note = null;
+            event.cents = 0;
+            return;
+        }
+
+        event.playable = true;
+        event.note = apparent[idx];
+        event.cents = (int) Math.round(100 * (value - first_value - idx));
+    }
+}
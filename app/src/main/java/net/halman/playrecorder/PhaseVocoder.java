@@ -0,0 +1,121 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+/*
+ * Refinement of the spectral peak frequency from the phase advance between
+ * two consecutive analysis windows (phase vocoder)
+ *
+ * A stable tone advances its phase by 2 * PI * f * hop / sample_rate
+ * between windows which end hop samples apart, no matter how long the
+ * windows are. The interpolated frequency of the peak is used to unwrap the
+ * phase difference, so it has to be closer to the true one than
+ * sample_rate / (2 * hop). That limits the hop to MAX_HOP_WINDOWS windows.
+ * The tone has changed when the interpolated frequencies of the two windows
+ * differ or the refinement moves the frequency by more than MAX_CORRECTION
+ * bin, the interpolated frequency is kept then.
+ * Complex spectrum of the last window is kept only around its peak.
+ *
+ * J. L. Flanagan, R. M. Golden: Phase vocoder, Bell System Technical
+ * Journal 1966
+ */
+
+class PhaseVocoder {
+    // bins kept on each side of the peak
+    private static final int BAND = 2;
+    // the unwrapping tolerates interpolation error of 1 / (2 * MAX_HOP_WINDOWS) bin
+    private static final int MAX_HOP_WINDOWS = 2;
+    private static final double MAX_CORRECTION = 0.1;
+
+    private final int sample_rate;
+    private final long max_hop;
+    private final double max_correction;
+    private final float[] last_real = new float[2 * BAND + 1];
+    private final float[] last_img = new float[2 * BAND + 1];
+    private int last_bin = -1;
+    private long last_end;
+    private double last_freq;
+    private long end = -1;
+
+    /*
+     * Positions and hops are counted in samples at sample_rate, the spectra
+     * may come from decimated signal, fft_span is the number of these
+     * samples covered by the FFT.
+     */
+    PhaseVocoder(int sample_rate, int fft_span)
+    {
+        this.sample_rate = sample_rate;
+        max_hop = (long) MAX_HOP_WINDOWS * fft_span;
+        max_correction = MAX_CORRECTION * sample_rate / fft_span;
+    }
+
+    /*
+     * Stream position of the newest sample of the next window
+     */
+    void position(long end)
+    {
+        this.end = end;
+    }
+
+    void reset()
+    {
+        last_bin = -1;
+        end = -1;
+    }
+
+    /*
+     * Frequency of the peak at bin refined from the phase advance since the
+     * last window, freq is the interpolated frequency. The spectrum around
+     * bin is kept for the next window. Without a valid position or a peak in
+     * the last window freq is returned as it is.
+     */
+    double refine(float[] real, float[] img, int size, int bin, double freq)
+    {
+        double result = freq;
+        long hop = end - last_end;
+        if (end >= 0 && last_bin >= 0 && Math.abs(bin - last_bin) <= BAND && hop > 0 && hop <= max_hop &&
+                Math.abs(freq - last_freq) <= max_correction) {
+            int i = bin - last_bin + BAND;
+            if (last_real[i] != 0 || last_img[i] != 0) {
+                double advance = Math.atan2(img[bin], real[bin]) - Math.atan2(last_img[i], last_real[i]);
+                double expected = 2 * Math.PI * freq * hop / sample_rate;
+                double deviation = advance - expected;
+                deviation -= 2 * Math.PI * Math.floor(deviation / (2 * Math.PI) + 0.5);
+                double correction = deviation * sample_rate / (2 * Math.PI * hop);
+                if (Math.abs(correction) <= max_correction) {
+                    result = freq + correction;
+                }
+            }
+        }
+
+        for (int i = 0; i <= 2 * BAND; ++i) {
+            int b = bin - BAND + i;
+            boolean inside = b >= 0 && b < size;
+            last_real[i] = inside ? real[b] : 0;
+            last_img[i] = inside ? img[b] : 0;
+        }
+        last_bin = end >= 0 ? bin : -1;
+        last_end = end;
+        last_freq = freq;
+        // the next window has to tell its position again
+        end = -1;
+
+        return result;
+    }
+}
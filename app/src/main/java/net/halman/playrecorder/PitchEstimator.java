@@ -0,0 +1,48 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+/*
+ * Pitch detection algorithm used by Frequency
+ */
+
+public interface PitchEstimator {
+    /*
+     * Estimate pitch of samples[from] .. samples[to - 1]. Returns frequency in Hz
+     * or 0 when there is no clear tone in the signal. Streaming estimators keep
+     * the history, they get just the samples recorded since the last call.
+     */
+    double estimate(short[] samples, int from, int to);
+
+    /*
+     * Confidence of the last estimate from 0 (no tone) to 1 (clean tone)
+     */
+    double confidence();
+
+    /*
+     * Forget the history after a gap in the samples, streaming estimators
+     * start again from silence.
+     */
+    void reset();
+
+    /*
+     * Stream position of the last sample passed to the next estimate(),
+     * estimators comparing consecutive windows take the hop from it.
+     */
+    void position(long end);
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+/*
+ * Result of one analysis update sent from Frequency to the UI
+ *
+ * Events come from PitchEventPool, the receiver calls recycle() when it
+ * has read the event, so the analysis does not allocate anything.
+ */
+
+public class PitchEvent {
+    // decided pitch in Hz, 0 when nobody plays
+    double frequency;
+    // 0 (no tone) .. 1 (clean tone)
+    double confidence;
+    // level of the last hop in sample units
+    double rms;
+    // System.nanoTime() clock when the newest analysed sample was captured
+    long capture_nanos;
+    // time spent by the analysis of the update
+    long analysis_nanos;
+    // nearest note when the instrument can play it (see NoteSnapshot)
+    boolean playable;
+    // apparent note, interned (see Note.of), null when not playable
+    Note note;
+    // distance from the note in cents
+    int cents;
+
+    volatile boolean in_use = false;
+
+    /*
+     * Give the event back to its pool
+     */
+    public void recycle()
+    {
+        in_use = false;
+    }
+}
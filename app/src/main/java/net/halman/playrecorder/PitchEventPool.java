@@ -0,0 +1,55 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+/*
+ * Fixed set of PitchEvent objects shared by one producer (the analysis
+ * thread) and one consumer (the UI). The producer fills an event before it
+ * is sent in a message, the consumer recycles it after reading. Free event
+ * is found by scanning from the last one, the pool is small.
+ */
+
+public class PitchEventPool {
+    private final PitchEvent[] events;
+    private int next = 0;
+
+    public PitchEventPool(int size)
+    {
+        events = new PitchEvent[size];
+        for (int i = 0; i < size; ++i) {
+            events[i] = new PitchEvent();
+        }
+    }
+
+    /*
+     * Free event or null when the consumer holds all of them
+     */
+    PitchEvent obtain()
+    {
+        for (int i = 0; i < events.length; ++i) {
+            PitchEvent event = events[next];
+            next = (next + 1) % events.length;
+            if (!event.in_use) {
+                event.in_use = true;
+                return event;
+            }
+        }
+        return null;
+    }
+}
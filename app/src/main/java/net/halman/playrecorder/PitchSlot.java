@@ -0,0 +1,64 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * The newest PitchEvent waiting for the UI
+ *
+ * The analysis thread publishes every update here, the UI takes it once per
+ * frame. An update the UI did not take in time is replaced by the newer one
+ * and its event goes back to the pool, so the UI never works through a queue
+ * of stale results however fast the analysis runs.
+ */
+
+public class PitchSlot {
+    private final AtomicReference<PitchEvent> latest = new AtomicReference<>(null);
+    private volatile long replaced = 0;
+
+    /*
+     * Called by the producer, the event not taken yet is recycled
+     */
+    void publish(PitchEvent event)
+    {
+        PitchEvent old = latest.getAndSet(event);
+        if (old != null) {
+            old.recycle();
+            replaced++;
+        }
+    }
+
+    /*
+     * Called by the consumer, null when nothing new has been published.
+     * The consumer recycles the event when it has read it.
+     */
+    PitchEvent take()
+    {
+        return latest.getAndSet(null);
+    }
+
+    /*
+     * Updates overwritten before the consumer took them
+     */
+    long replaced()
+    {
+        return replaced;
+    }
+}
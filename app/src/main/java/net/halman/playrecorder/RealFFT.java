@@ -0,0 +1,92 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+/*
+ * Fast Fourier transformation of real signal
+ *
+ * Even samples are packed into real part and odd samples into imaginary
+ * part of a half size complex transformation. Bins of the real signal
+ * are untangled from the result afterwards.
+ */
+
+public class RealFFT {
+    private final int fft_size;
+    private final FFT half_fft;
+    private final float[] half_real;
+    private final float[] half_img;
+    private final float[] twiddle_cos;
+    private final float[] twiddle_sin;
+
+    public RealFFT(int exp)
+    {
+        fft_size = 1 << exp;
+        half_fft = new FFT(exp - 1);
+        half_real = new float[fft_size / 2];
+        half_img = new float[fft_size / 2];
+        twiddle_cos = new float[fft_size / 2];
+        twiddle_sin = new float[fft_size / 2];
+        for (int k = 0; k < fft_size / 2; ++k) {
+            double ang = Math.PI * 2 * k / fft_size;
+            twiddle_cos[k] = (float) Math.cos(ang);
+            twiddle_sin[k] = (float) Math.sin(ang);
+        }
+    }
+
+    int size()
+    {
+        return fft_size;
+    }
+
+    /*
+     * Transform first size() samples of input. Bins 0 .. size() / 2 - 1
+     * are stored into real and img, the result is not normalized.
+     * The input array can be the same as real.
+     */
+    void transform(float[] input, float[] real, float[] img)
+    {
+        int n2 = fft_size / 2;
+
+        for (int i = 0; i < n2; ++i) {
+            half_real[i] = input[2 * i];
+            half_img[i] = input[2 * i + 1];
+        }
+
+        half_fft.transform(half_real, half_img, false);
+
+        for (int k = 0; k < n2; ++k) {
+            int m = (n2 - k) & (n2 - 1);
+            float a = half_real[k];
+            float b = half_img[k];
+            float c = half_real[m];
+            float d = half_img[m];
+
+            // even part (Z[k] + conj(Z[m])) / 2, odd part (Z[k] - conj(Z[m])) / 2i
+            float er = (a + c) * 0.5f;
+            float ei = (b - d) * 0.5f;
+            float or = (b + d) * 0.5f;
+            float oi = (c - a) * 0.5f;
+
+            // X[k] = even + exp(-2 * PI * i * k / n) * odd
+            float wr = twiddle_cos[k];
+            float wi = -twiddle_sin[k];
+            real[k] = er + wr * or - wi * oi;
+            img[k] = ei + wr * oi + wi * or;
+        }
+    }
+}
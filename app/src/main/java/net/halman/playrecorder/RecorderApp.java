@@ -39,7 +39,7 @@ public class RecorderApp {
     void noteByPosition(int position)
     {
         boolean tr = apparent_note.trill();
-        apparent_note = scale.noteByPosition(position);
+        apparent_note.set(scale.noteByPosition(position));
         apparent_note.trill(tr);
         if (! canPlay()) {
             if (position < 5) {
@@ -73,7 +73,7 @@ public class RecorderApp {
     {
         boolean tr = noteTrill();
         Note lowest = musical_instrument.apparentLowestNote();
-        Note tmp = new Note(lowest.value(), Note.Accidentals.NONE, false);
+        Note tmp = Note.of(lowest.value(), Note.Accidentals.NONE, false);
         if (scale.noteAbsoluteValue(tmp) == scale.noteAbsoluteValue(lowest)) {
             apparent_note.set(tmp);
         } else {
@@ -82,6 +82,11 @@ public class RecorderApp {
         apparent_note.trill(tr);
     }
 
+    int instrumentLowestFreq100() {
+        Note n = musical_instrument.realLowestNote();
+        return scale.noteToFrequency(n);
+    }
+
     int instrumentHighestFreq100() {
         Note n = musical_instrument.realHighestNote();
         return scale.noteToFrequency(n);
@@ -91,7 +96,7 @@ public class RecorderApp {
     {
         boolean tr = noteTrill();
         Note highest = musical_instrument.apparentHighestNote();
-        Note tmp = new Note(highest.value(), Note.Accidentals.NONE, false);
+        Note tmp = Note.of(highest.value(), Note.Accidentals.NONE, false);
         if (scale.noteAbsoluteValue(tmp) == scale.noteAbsoluteValue(highest)) {
             apparent_note.set(tmp);
         } else {
@@ -160,6 +165,14 @@ public class RecorderApp {
         scale.signature(sig);
     }
 
+    int reference() {
+        return scale.reference();
+    }
+
+    void reference(int freq100) {
+        scale.reference(freq100);
+    }
+
     ArrayList<Grip> grips() {
         if (apparent_note.trill()) {
             return musical_instrument.trillGrips(scale, musical_instrument.apparentNoteToRealNote(apparent_note));
@@ -183,6 +196,14 @@ public class RecorderApp {
         return musical_instrument.canPlay(scale, n);
     }
 
+    /*
+     * Current scale and instrument for the pitch analysis
+     */
+    NoteSnapshot noteSnapshot()
+    {
+        return new NoteSnapshot(scale, musical_instrument);
+    }
+
     public Clefs clef()
     {
         return scale.clef();
@@ -264,7 +285,7 @@ public class RecorderApp {
     void realNote(int value, int acc, boolean tr)
     {
         apparentNote(value, acc, tr);
-        apparent_note = musical_instrument.realNoteToApparentNote(apparent_note);
+        apparent_note.set(musical_instrument.realNoteToApparentNote(apparent_note));
     }
 
     int numberOfHoles()
@@ -22,33 +22,99 @@ import static net.halman.playrecorder.Note.Accidentals.NONE;
 import static net.halman.playrecorder.Note.Accidentals.RELEASE;
 import static net.halman.playrecorder.Note.Accidentals.SHARP;
 
+import java.util.Arrays;
+
+/*
+ * Key signature and clef of the score and the note arithmetic in them
+ *
+ * The signature matters only through the accidentals of the seven degrees,
+ * so half steps, implied accidentals and preferred spelling of every
+ * semitone are computed once per signature (see Tables). The tables are
+ * immutable and shared by all scales, the operations are array lookups.
+ */
+
 public class Scale {
     enum Clefs {
         G,
         F
     }
 
-                                    /* c  d  e  f  g  a  b   c */
-                                    /* 0  1  2  3  4  5  6   7 */
-    private int[] scaleIntervals    = {0, 2, 4, 5, 7, 9, 11};
-    private String[] scaleNames     = {"Cb","Gb","Db","Ab","Eb","Bb","F","C","G","D","A","E","B","F#","C#"};
-    private int[] scalesAccidentals = { 3,   0,   4,   1,   5,   2,   6, -1,  3,  0,  4,  1,  5,  2,   6};
+                                                 /* c  d  e  f  g  a  b   c */
+                                                 /* 0  1  2  3  4  5  6   7 */
+    private static final int[] scaleIntervals    = {0, 2, 4, 5, 7, 9, 11};
+    private static final String[] scaleNames     = {"Cb","Gb","Db","Ab","Eb","Bb","F","C","G","D","A","E","B","F#","C#"};
+    private static final int[] scalesAccidentals = { 3,   0,   4,   1,   5,   2,   6, -1,  3,  0,  4,  1,  5,  2,   6};
+    /* degree of the semitones of an octave, semitone between two degrees belongs to the upper one */
+    private static final int[] degrees           = {0, 1, 1, 2, 2, 3, 4, 4, 5, 5, 6, 6};
+    private static final Tables[] tables = new Tables[15];
+
+    static {
+        for (int i = -7; i <= 7; i++) {
+            tables[i + 7] = new Tables(i);
+        }
+    }
+
     private int scaleSignature;
     private Clefs scaleClef;
-    private Note[] scale;
-    private int[] frequencies = {26163, 27718, 29366, 31113, 32963, 34923, 36999, 39200, 41530, 44000, 46616, 49388};
+    private Tables scale;
+
+    /* a4 in hundredths of Hz, 415 Hz (baroque) to 466 Hz */
+    static final int DEFAULT_REFERENCE = 44000;
+    static final int MIN_REFERENCE = 41500;
+    static final int MAX_REFERENCE = 46600;
+    private static final int A4_VALUE = 9;
+    private static final double LOG_2 = Math.log(2);
+    /* equal temperament frequencies of absolute values c0 .. b10 */
+    private static final int FIRST_VALUE = -48;
+    private static final int VALUE_COUNT = 132;
+    private int reference = DEFAULT_REFERENCE;
+    private double log_reference;
+    private final int[] frequencies = new int[VALUE_COUNT];
 
     Scale(int asignature) {
         signature(asignature);
         clef(Clefs.G);
+        reference(DEFAULT_REFERENCE);
     }
 
     Scale(int asignature, Clefs aclef) {
         signature(asignature);
         clef(aclef);
+        reference(DEFAULT_REFERENCE);
         // noteNames = getResources().getStringArray(R.array.note_names);
     }
 
+    int reference()
+    {
+        return reference;
+    }
+
+    /*
+     * Pitch of a4 in hundredths of Hz, the frequencies of all notes follow
+     */
+    void reference(int freq100)
+    {
+        if ((freq100 >= MIN_REFERENCE) && (freq100 <= MAX_REFERENCE)) {
+            reference = freq100;
+        } else {
+            reference = DEFAULT_REFERENCE;
+        }
+
+        log_reference = Math.log(reference);
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            frequencies[i] = valueToFrequency(FIRST_VALUE + i);
+        }
+    }
+
+    /*
+     * Equal temperament frequency computed in double and rounded once, so
+     * the rounding error does not double with every octave
+     */
+    private int valueToFrequency(int abs_value)
+    {
+        return (int) Math.round(reference * Math.pow(2, (abs_value - A4_VALUE) / 12.0));
+    }
+
     int signature()
     {
         return scaleSignature;
@@ -61,7 +127,7 @@ public class Scale {
         } else {
             scaleSignature = 0;
         }
-        initScale();
+        scale = tables[scaleSignature + 7];
     }
 
     Clefs clef()
@@ -74,26 +140,6 @@ public class Scale {
         scaleClef = aclef;
     }
 
-    private void initScale()
-    {
-        scale = new Note[7];
-        for (int i = 0; i < 7; i++) {
-            scale[i] = new Note(scaleIntervals[i], Note.Accidentals.NONE, false);
-        }
-        if (scaleSignature > 0) {
-            /* # */
-            for (int i = 8; i <= scaleSignature + 7; i++) {
-                scale[scalesAccidentals[i]].accidentals(SHARP);
-            }
-        }
-        if (scaleSignature < 0) {
-            /* b */
-            for (int i = 6; i >= scaleSignature + 7; i--) {
-                scale[scalesAccidentals[i]].accidentals(FLAT);
-            }
-        }
-    }
-
     String name (int signature) {
         if (signature >= -7 && signature <= 7) {
             return scaleNames[signature + 7];
@@ -101,164 +147,67 @@ public class Scale {
         return "";
     }
 
-    private int noteIdx (Note note)
+    /*
+     * Semitone of the value within its octave, 0 (c) .. 11 (b)
+     */
+    private static int semitone(int value)
     {
-        int v = note.value();
-        while (v < 0) { v += 12; };
-        int m = v % 12;
-        for(int i = 0; i < 8; i++) {
-            if (scale[i].value () >= m) {
-                return i;
-            }
-        }
-        return 0;
+        return ((value % 12) + 12) % 12;
+    }
+
+    private static int octave(int value)
+    {
+        return (value - semitone(value)) / 12;
     }
 
     public int notePosition (Note note)
     {
-        int idx = noteIdx (note);
-        int octave = note.value() / 12;
-        if (note.value() < 0) {
-            octave--;
-        }
+        int idx = degrees[semitone(note.value())];
         if (scaleClef == Clefs.F) {
             idx -= 2;
         }
-        return idx + octave * 7;
+        return idx + octave(note.value()) * 7;
     }
 
     public Note noteByPosition (int position)
     {
-        Note note = new Note(Note.c4, NONE, false);
-        int pos = notePosition(note);
-
-        while (pos < position) {
-            noteUp(note);
-            pos = notePosition(note);
-        }
-
-        while (pos > position) {
-            noteDown(note);
-            pos = notePosition(note);
+        if (scaleClef == Clefs.F) {
+            position += 2;
         }
 
-        return note;
+        int idx = ((position % 7) + 7) % 7;
+        int octave = (position - idx) / 7;
+        return Note.of(scaleIntervals[idx] + octave * 12, NONE, false);
     }
 
     void noteUp (Note note)
     {
-        int octave = note.value() / 12;
-        if (note.value() < 0 && note.value() % 12 != 0) {
-            octave--;
-        }
-
-        int idx = noteIdx(note) + 1;
-        if (idx > 6) {
-            idx = 0;
-            octave++;
-        }
-
-        note.value (scale[idx].value () + octave * 12);
+        note.value (note.value() + Tables.up(semitone(note.value())));
         note.accidentals (Note.Accidentals.NONE);
     }
 
-    void noteDown(Note note)
+    /*
+     * Interned note of the next degree up, as noteUp() on a copy
+     */
+    Note nextDegree(Note note)
     {
-        int octave = note.value() / 12;
-        if (note.value() < 0 && note.value() % 12 != 0) {
-            octave--;
-        }
-
-        int idx = noteIdx(note) - 1;
-        if (idx < 0) {
-            idx = 6;
-            octave--;
-        }
+        return Note.of(note.value() + Tables.up(semitone(note.value())), NONE, note.trill());
+    }
 
-        note.value (scale[idx].value () + octave * 12);
+    void noteDown(Note note)
+    {
+        note.value (note.value() + Tables.down(semitone(note.value())));
         note.accidentals (Note.Accidentals.NONE);
     }
 
     void noteUpHalf(Note note)
     {
-        Note.Accidentals scaleAccidentals = scale[noteIdx(note)].accidentals();
-        if (scaleAccidentals == note.accidentals()) {
-            note.accidentals(NONE);
-        }
-
-        switch (note.accidentals()) {
-            case FLAT:
-                switch (scaleAccidentals) {
-                    case NONE:
-                    case FLAT:
-                        note.accidentals(NONE);
-                        return;
-                    case SHARP:
-                        note.accidentals(RELEASE);
-                        return;
-                }
-            case SHARP:
-                note.accidentals(NONE);
-                noteUp(note);
-                if (scale[noteIdx(note)].accidentals() == SHARP) {
-                    note.accidentals(RELEASE);
-                }
-
-                return;
-            case NONE:
-                switch (scaleAccidentals) {
-                    case NONE:
-                        note.accidentals(SHARP);
-                        return;
-                    case FLAT:
-                        note.accidentals(RELEASE);
-                        return;
-                    case SHARP:
-                        note.accidentals(NONE);
-                        noteUp(note);
-                        if (scale[noteIdx(note)].accidentals() == SHARP) {
-                            note.accidentals(RELEASE);
-                        }
-
-                        return;
-                }
-            case RELEASE:
-                switch (scaleAccidentals) {
-                    case NONE:
-                    case FLAT:
-                        note.accidentals(SHARP);
-                        return;
-                    case SHARP:
-                        note.accidentals(NONE);
-                        return;
-                }
-        }
+        scale.upHalf(note);
     }
 
     int noteAbsoluteValue(Note note)
     {
-        int result = note.value ();
-
-        switch (note.accidentals()) {
-            case RELEASE:
-                return result;
-            case SHARP:
-                return result+1;
-            case FLAT:
-                return result-1;
-        }
-
-        int idx = noteIdx (note);
-        switch (scale[idx].accidentals ()) {
-            case SHARP:
-                result++;
-                break;
-            case FLAT:
-                result--;
-                break;
-        }
-
-        return result;
+        return scale.absoluteValue(note);
     }
 
     int noteMidiValue(Note note)
@@ -268,65 +217,12 @@ public class Scale {
 
     int noteNameIndex(Note n)
     {
-        int i = noteAbsoluteValue(n) % 12;
-        while (i < 0) i += 12;
-        return i;
+        return semitone(noteAbsoluteValue(n));
     }
 
     void noteDownHalf(Note note)
     {
-        Note.Accidentals scaleAccidentals = scale[noteIdx(note)].accidentals();
-        if (scaleAccidentals == note.accidentals()) {
-            note.accidentals(NONE);
-        }
-
-        switch (note.accidentals()) {
-            case SHARP:
-                switch (scaleAccidentals) {
-                    case NONE:
-                    case SHARP:
-                        note.accidentals(NONE);
-                        return;
-                    case FLAT:
-                        note.accidentals(RELEASE);
-                        return;
-                }
-            case FLAT:
-                note.accidentals(NONE);
-                noteDown(note);
-                if (scale[noteIdx(note)].accidentals() == FLAT) {
-                    note.accidentals(RELEASE);
-                }
-
-                return;
-            case NONE:
-                switch (scaleAccidentals) {
-                    case NONE:
-                        note.accidentals(FLAT);
-                        return;
-                    case SHARP:
-                        note.accidentals(RELEASE);
-                        return;
-                    case FLAT:
-                        note.accidentals(NONE);
-                        noteDown(note);
-                        if (scale[noteIdx(note)].accidentals() == FLAT) {
-                            note.accidentals(RELEASE);
-                        }
-
-                        return;
-                }
-            case RELEASE:
-                switch (scaleAccidentals) {
-                    case NONE:
-                    case SHARP:
-                        note.accidentals(FLAT);
-                        return;
-                    case FLAT:
-                        note.accidentals(NONE);
-                        return;
-                }
-        }
+        scale.downHalf(note);
     }
 
     Note.Accidentals noteAccidentals(Note note)
@@ -335,98 +231,251 @@ public class Scale {
     }
 
     int noteToFrequency(Note note) {
-        int idx = noteNameIndex(note);
-        int freq100 = frequencies[idx];
-        idx = noteAbsoluteValue(note);
-        while (idx >= 12) {
-            freq100 *= 2;
-            idx -= 12;
+        int idx = noteAbsoluteValue(note) - FIRST_VALUE;
+        if (idx >= 0 && idx < VALUE_COUNT) {
+            return frequencies[idx];
         }
-
-        while (idx < 0) {
-            freq100 /= 2;
-            idx += 12;
-        }
-        return freq100;
+        return valueToFrequency(idx + FIRST_VALUE);
     }
 
     Note frequencyNearestNote(int freq100)
     {
-        int octave = 0;
-        int abs_value = 0;
-        int temp_freq = freq100;
-
         if (freq100 < 2000) {
             return null;
         }
 
-        while (temp_freq < frequencies[0]) {
-            temp_freq *= 2;
-            --octave;
-        }
-        while (temp_freq > frequencies[11]) {
-            temp_freq /= 2;
-            ++octave;
-        }
+        return absoluteValueToNote(frequencyNearestValue(freq100));
+    }
 
-        if (temp_freq < frequencies[0]) {
-            abs_value = 0;
-        } else if (temp_freq > frequencies[11]) {
-            abs_value = 11;
-        } else {
-            for (int i = 0; i < 11; i++) {
-                if (temp_freq >= frequencies[i] && temp_freq <= frequencies[i + 1]) {
-                    int d1 = temp_freq - frequencies[i];
-                    int d2 = frequencies[i + 1] - temp_freq;
-                    abs_value = (d1 < d2) ? i : i + 1;
-                    break;
+    /*
+     * Frequency as absolute value with fraction, semitones from c4 in equal
+     * temperament tuned to the reference
+     */
+    double frequencyToValue(int freq100)
+    {
+        return A4_VALUE + 12 * (Math.log(freq100) - log_reference) / LOG_2;
+    }
+
+    /*
+     * Absolute value of the semitone nearest to the frequency
+     */
+    int frequencyNearestValue(int freq100)
+    {
+        return (int) Math.round(frequencyToValue(freq100));
+    }
+
+    /*
+     * Distance of the frequency from the semitone in cents
+     */
+    int frequencyCents(int freq100, int abs_value)
+    {
+        return (int) Math.round(100 * (frequencyToValue(freq100) - abs_value));
+    }
+
+    /*
+     * Note of the scale with the absolute value, without accidentals when
+     * the scale allows it
+     */
+    Note absoluteValueToNote(int abs_value)
+    {
+        int idx = semitone(abs_value);
+        return Note.of(abs_value - idx + scale.spelled_value[idx], scale.spelled_accidentals[idx], false);
+    }
+
+    /*
+     * Note arithmetic of one signature. Half steps are indexed by the
+     * semitone of the note and its accidentals and give the change of the
+     * value and the new accidentals.
+     */
+    private static final class Tables {
+        private static final int ACCIDENTALS = Note.Accidentals.values().length;
+
+        /* accidentals of the degrees given by the signature */
+        private final Note.Accidentals[] key = new Note.Accidentals[7];
+        private final int[] up_delta = new int[12 * ACCIDENTALS];
+        private final Note.Accidentals[] up_accidentals = new Note.Accidentals[12 * ACCIDENTALS];
+        private final int[] down_delta = new int[12 * ACCIDENTALS];
+        private final Note.Accidentals[] down_accidentals = new Note.Accidentals[12 * ACCIDENTALS];
+        /* preferred spelling of the semitones of c4 octave */
+        final int[] spelled_value = new int[12];
+        final Note.Accidentals[] spelled_accidentals = new Note.Accidentals[12];
+
+        Tables(int signature)
+        {
+            Arrays.fill(key, NONE);
+            if (signature > 0) {
+                /* # */
+                for (int i = 8; i <= signature + 7; i++) {
+                    key[scalesAccidentals[i]] = SHARP;
+                }
+            }
+            if (signature < 0) {
+                /* b */
+                for (int i = 6; i >= signature + 7; i--) {
+                    key[scalesAccidentals[i]] = FLAT;
+                }
+            }
+
+            for (int m = 0; m < 12; m++) {
+                for (Note.Accidentals a: Note.Accidentals.values()) {
+                    buildUpHalf(m, a);
+                    buildDownHalf(m, a);
                 }
             }
+
+            for (int m = 0; m < 12; m++) {
+                Note n = spell(m);
+                spelled_value[m] = n.value();
+                spelled_accidentals[m] = n.accidentals();
+            }
+        }
+
+        /*
+         * Change of the value to the next degree up
+         */
+        static int up(int semitone)
+        {
+            int idx = degrees[semitone];
+            return idx == 6 ? 12 + scaleIntervals[0] - semitone : scaleIntervals[idx + 1] - semitone;
         }
-        abs_value += 12 * octave;
-        Note n = new Note(Note.c4 + 12 * octave, NONE, false);
-        while (noteAbsoluteValue(n) < abs_value) {
-            noteUpHalf(n);
+
+        /*
+         * Change of the value to the next degree down
+         */
+        static int down(int semitone)
+        {
+            int idx = degrees[semitone];
+            return idx == 0 ? scaleIntervals[6] - 12 - semitone : scaleIntervals[idx - 1] - semitone;
         }
-        while (noteAbsoluteValue(n) > abs_value) {
-            noteDownHalf(n);
+
+        private Note.Accidentals keyOf(int value)
+        {
+            return key[degrees[semitone(value)]];
         }
 
-        if (n.accidentals() != NONE) {
-            // found note with accidentals, lets look for a better one
-            Note betterNote = new Note(n);
-            noteDownHalf(betterNote);
-            noteDownHalf(betterNote);
-            for (int i = 0; i < 5; i++) {
-                noteUpHalf(betterNote);
-                if (noteAbsoluteValue(betterNote) == abs_value && betterNote.accidentals() == NONE) {
-                    return betterNote;
-                }
+        /*
+         * Accidentals equal to the key are not written, sharp (written or
+         * by the key) goes up to the next degree, flat goes back to the
+         * natural or to the key
+         */
+        private void buildUpHalf(int m, Note.Accidentals a)
+        {
+            int idx = m * ACCIDENTALS + a.ordinal();
+            Note.Accidentals k = key[degrees[m]];
+            if (a == k) {
+                a = NONE;
             }
-            for (int i = 0; i < 5; i++) {
-                noteDownHalf(betterNote);
-                if (noteAbsoluteValue(betterNote) == abs_value && betterNote.accidentals() == NONE) {
-                    return betterNote;
-                }
+
+            up_delta[idx] = 0;
+            if (a == RELEASE) {
+                up_accidentals[idx] = k == SHARP ? NONE : SHARP;
+            } else if (a == FLAT) {
+                up_accidentals[idx] = k == SHARP ? RELEASE : NONE;
+            } else if (a == NONE && k == NONE) {
+                up_accidentals[idx] = SHARP;
+            } else if (a == NONE && k == FLAT) {
+                up_accidentals[idx] = RELEASE;
+            } else {
+                up_delta[idx] = up(m);
+                up_accidentals[idx] = keyOf(m + up_delta[idx]) == SHARP ? RELEASE : NONE;
             }
+        }
 
-            betterNote.set(n);
-            noteDownHalf(betterNote);
-            noteDownHalf(betterNote);
-            for (int i = 0; i < 5; i++) {
-                noteUpHalf(betterNote);
-                if (noteAbsoluteValue(betterNote) == abs_value && betterNote.accidentals() == RELEASE) {
-                    return betterNote;
-                }
+        private void buildDownHalf(int m, Note.Accidentals a)
+        {
+            int idx = m * ACCIDENTALS + a.ordinal();
+            Note.Accidentals k = key[degrees[m]];
+            if (a == k) {
+                a = NONE;
             }
-            for (int i = 0; i < 5; i++) {
-                noteDownHalf(betterNote);
-                if (noteAbsoluteValue(betterNote) == abs_value && betterNote.accidentals() == RELEASE) {
-                    return betterNote;
+
+            down_delta[idx] = 0;
+            if (a == RELEASE) {
+                down_accidentals[idx] = k == FLAT ? NONE : FLAT;
+            } else if (a == SHARP) {
+                down_accidentals[idx] = k == FLAT ? RELEASE : NONE;
+            } else if (a == NONE && k == NONE) {
+                down_accidentals[idx] = FLAT;
+            } else if (a == NONE && k == SHARP) {
+                down_accidentals[idx] = RELEASE;
+            } else {
+                down_delta[idx] = down(m);
+                down_accidentals[idx] = keyOf(m + down_delta[idx]) == FLAT ? RELEASE : NONE;
+            }
+        }
+
+        /*
+         * Note of c4 octave with the absolute value, a note without
+         * accidentals or with natural sign is preferred to sharp or flat
+         */
+        private Note spell(int abs_value)
+        {
+            Note n = new Note(Note.c4, NONE, false);
+            while (absoluteValue(n) < abs_value) {
+                upHalf(n);
+            }
+            while (absoluteValue(n) > abs_value) {
+                downHalf(n);
+            }
+
+            if (n.accidentals() == NONE) {
+                return n;
+            }
+
+            Note.Accidentals[] preferred = {NONE, RELEASE};
+            for (Note.Accidentals accidentals: preferred) {
+                Note better = new Note(n);
+                downHalf(better);
+                downHalf(better);
+                for (int i = 0; i < 5; i++) {
+                    upHalf(better);
+                    if (absoluteValue(better) == abs_value && better.accidentals() == accidentals) {
+                        return better;
+                    }
+                }
+                for (int i = 0; i < 5; i++) {
+                    downHalf(better);
+                    if (absoluteValue(better) == abs_value && better.accidentals() == accidentals) {
+                        return better;
+                    }
                 }
             }
+
+            return n;
         }
 
-        return n;
+        void upHalf(Note note)
+        {
+            int idx = semitone(note.value()) * ACCIDENTALS + note.accidentals().ordinal();
+            note.value(note.value() + up_delta[idx]);
+            note.accidentals(up_accidentals[idx]);
+        }
+
+        void downHalf(Note note)
+        {
+            int idx = semitone(note.value()) * ACCIDENTALS + note.accidentals().ordinal();
+            note.value(note.value() + down_delta[idx]);
+            note.accidentals(down_accidentals[idx]);
+        }
+
+        int absoluteValue(Note note)
+        {
+            switch (note.accidentals()) {
+                case RELEASE:
+                    return note.value();
+                case SHARP:
+                    return note.value() + 1;
+                case FLAT:
+                    return note.value() - 1;
+            }
+
+            switch (keyOf(note.value())) {
+                case SHARP:
+                    return note.value() + 1;
+                case FLAT:
+                    return note.value() - 1;
+            }
+            return note.value();
+        }
     }
 }
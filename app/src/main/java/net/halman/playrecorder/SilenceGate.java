@@ -0,0 +1,88 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+/*
+ * Cheap energy gate in front of the pitch analysis. RMS of every hop is
+ * compared with the noise floor, which drops immediately to quieter hops,
+ * follows the noise up while the gate is closed and rises slowly while it
+ * is open. Closed gate follows only hops close to the floor, a louder hop
+ * may be a soft note starting, so the floor rises slowly as with open gate
+ * and the note opens the gate when it grows. The floor thus follows
+ * microphone gain and room noise, a long note does not close the gate as
+ * the floor is limited by MAX_FLOOR.
+ */
+
+public class SilenceGate {
+    // signal has to be this times above the noise floor (about 10 dB)
+    private static final double OPEN_RATIO = 3;
+    // closed gate follows hops up to this times the noise floor as noise
+    private static final double NOISE_RATIO = 1.25;
+    // absolute minimum RMS of a tone
+    private static final double MIN_RMS = 20;
+    private static final double MAX_FLOOR = 1500;
+    // noise floor time constant while the gate is closed, in seconds
+    private static final double FOLLOW_TIME = 0.5;
+    // noise floor growth while the gate is open or the hop is above the noise, dB per second
+    private static final double OPEN_RISE_DB = 1;
+
+    private final double follow;
+    private final double open_rise;
+    private double floor = MIN_RMS / OPEN_RATIO;
+    private double rms = 0;
+
+    public SilenceGate(int updates_per_second)
+    {
+        follow = 1 - Math.exp(-1.0 / (FOLLOW_TIME * updates_per_second));
+        open_rise = Math.pow(10, OPEN_RISE_DB / 20 / updates_per_second);
+    }
+
+    /*
+     * Feed samples[from] .. samples[to - 1] recorded since the last call,
+     * returns true when there is nothing to analyse.
+     */
+    boolean silent(short[] samples, int from, int to)
+    {
+        double sum = 0;
+        for (int i = from; i < to; ++i) {
+            sum += samples[i] * samples[i];
+        }
+        rms = to > from ? Math.sqrt(sum / (to - from)) : 0;
+
+        boolean open = rms >= Math.max(MIN_RMS, floor * OPEN_RATIO);
+        if (rms < floor) {
+            floor = rms;
+        } else if (open || rms > floor * NOISE_RATIO) {
+            floor = Math.min(floor * open_rise, MAX_FLOOR);
+        } else {
+            floor += follow * (rms - floor);
+        }
+
+        return !open;
+    }
+
+    double noiseFloor()
+    {
+        return floor;
+    }
+
+    double rms()
+    {
+        return rms;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import java.util.Arrays;
+
+/*
+ * Pitch detection using sliding discrete Fourier transformation
+ *
+ * Only bins within the instrument range are tracked. Every incoming sample
+ * updates them in O(bins) time, so analysis of one hop costs O(hop x bins)
+ * and nothing is recomputed for samples which stay in the window.
+ * Hann window is applied in frequency domain as convolution with
+ * (-1/4, 1/2, -1/4) kernel.
+ *
+ * This estimator is streaming, it keeps the window history itself and
+ * estimate() gets only samples recorded since the last call.
+ *
+ * E. Jacobsen, R. Lyons: The sliding DFT, IEEE Signal Processing Magazine 2003
+ */
+
+public class SlidingDFTPitchEstimator implements PitchEstimator {
+    // damping keeps the recursion stable, rounding errors fade away
+    private static final double DAMPING = 0.99999;
+
+    private final int sample_rate;
+    private final int window_size;
+    private final short[] history;
+    private int history_pos = 0;
+    private final int first_bin;
+    private final int last_bin;
+    private final double lowest_bin;
+    private final double[] bin_real;
+    private final double[] bin_img;
+    private final double[] rotation_cos;
+    private final double[] rotation_sin;
+    private final double damping_n;
+    private final float[] power;
+    private double confidence = 0;
+
+    public SlidingDFTPitchEstimator(int sample_rate, int window_size, double lowest_freq, double highest_freq)
+    {
+        this.sample_rate = sample_rate;
+        this.window_size = window_size;
+        history = new short[window_size];
+
+        // quarter tone margin around the instrument range plus neighbours for Hann window
+        lowest_bin = lowest_freq * Math.pow(2, -1 / 24.0) * window_size / sample_rate;
+        double highest_bin = highest_freq * Math.pow(2, 1 / 24.0) * window_size / sample_rate;
+        first_bin = Math.max(1, (int) Math.floor(lowest_bin) - 1);
+        last_bin = Math.min(window_size / 2 - 1, (int) Math.ceil(highest_bin) + 2);
+
+        bin_real = new double[window_size / 2];
+        bin_img = new double[window_size / 2];
+        rotation_cos = new double[window_size / 2];
+        rotation_sin = new double[window_size / 2];
+        power = new float[window_size / 2];
+        for (int k = first_bin; k <= last_bin; ++k) {
+            double ang = Math.PI * 2 * k / window_size;
+            rotation_cos[k] = DAMPING * Math.cos(ang);
+            rotation_sin[k] = DAMPING * Math.sin(ang);
+        }
+        damping_n = Math.pow(DAMPING, window_size);
+    }
+
+    int windowSize()
+    {
+        return window_size;
+    }
+
+    public double estimate(short[] samples, int from, int to)
+    {
+        for (int i = from; i < to; ++i) {
+            push(samples[i]);
+        }
+
+        return peak();
+    }
+
+    public double confidence()
+    {
+        return confidence;
+    }
+
+    public void reset()
+    {
+        Arrays.fill(history, (short) 0);
+        Arrays.fill(bin_real, 0);
+        Arrays.fill(bin_img, 0);
+        history_pos = 0;
+    }
+
+    public void position(long end)
+    {
+        // windows are analysed independently
+    }
+
+    private void push(short sample)
+    {
+        double delta = sample - damping_n * history[history_pos];
+        history[history_pos] = sample;
+        history_pos = (history_pos + 1) % window_size;
+
+        // X[k] = r * exp(2 * PI * i * k / n) * (X[k] + x[n] - r^n * x[n - N])
+        for (int k = first_bin; k <= last_bin; ++k) {
+            double a = bin_real[k] + delta;
+            double b = bin_img[k];
+            bin_real[k] = a * rotation_cos[k] - b * rotation_sin[k];
+            bin_img[k] = a * rotation_sin[k] + b * rotation_cos[k];
+        }
+    }
+
+    private double peak()
+    {
+        for (int k = first_bin + 1; k < last_bin; ++k) {
+            double re = 0.5 * bin_real[k] - 0.25 * (bin_real[k - 1] + bin_real[k + 1]);
+            double im = 0.5 * bin_img[k] - 0.25 * (bin_img[k - 1] + bin_img[k + 1]);
+            power[k] = (float) (re * re + im * im);
+        }
+
+        int maxIndex = Spectrum.strongest(power, first_bin + 1, last_bin);
+        confidence = 0;
+        double maxVal = power[maxIndex] / ((double) window_size * window_size);
+        if (maxVal < Spectrum.MIN_STRENGTH) {
+            // filter out very week signal
+            return 0;
+        }
+
+        double bin = maxIndex + Spectrum.interpolate(power, maxIndex, first_bin + 1, last_bin);
+        bin = Spectrum.fundamental(power, last_bin, bin, lowest_bin);
+        confidence = Spectrum.clarity(power, first_bin + 1, last_bin, maxIndex);
+        return (sample_rate * bin) / window_size;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+/*
+ * Peak picking on power spectrum shared by spectral pitch estimators
+ */
+
+public class Spectrum {
+    static final double MIN_STRENGTH = 100;
+
+    private static final int HARMONICS = 5;
+    private static final double HARMONIC_WEIGHT = 0.8;
+    private static final int MAX_SUBHARMONIC = 4;
+    // half width of Hann main lobe in bins
+    private static final int LOBE = 2;
+    // semitones of harmonics 1 .. 5 above the fundamental
+    private static final int[] HARMONIC_SEMITONES = {0, 12, 19, 24, 28};
+
+    private Spectrum() {}
+
+    /*
+     * Strongest bin of power[from] .. power[to - 1]
+     */
+    static int strongest(float[] power, int from, int to)
+    {
+        double maxVal = -1;
+        int maxIndex = from;
+        for (int j = from; j < to; ++j) {
+            if (power[j] > maxVal) {
+                maxVal = power[j];
+                maxIndex = j;
+            }
+        }
+        return maxIndex;
+    }
+
+    /*
+     * Position of the true peak relative to the bin, estimated by fitting
+     * parabola through log-magnitudes of the bin and its neighbours.
+     * Peak of Hann windowed sinus is close to Gaussian, so the parabola
+     * in log domain fits it well.
+     */
+    static double interpolate(float[] power, int bin, int from, int to)
+    {
+        if (bin <= from || bin >= to - 1) {
+            return 0;
+        }
+
+        double a = power[bin - 1];
+        double b = power[bin];
+        double c = power[bin + 1];
+        if (a <= 0 || c <= 0) {
+            return 0;
+        }
+
+        a = Math.log(a);
+        b = Math.log(b);
+        c = Math.log(c);
+        double d = a - 2 * b + c;
+        if (d >= 0) {
+            return 0;
+        }
+
+        return 0.5 * (a - c) / d;
+    }
+
+    /*
+     * The strongest bin can be a harmonic of the played tone, overblown notes
+     * often have weak fundamental. Each subharmonic of the peak down to the
+     * lowest_bin is scored by weighted sum of its harmonics (subharmonic
+     * summation) and the best one wins. Weights are decreasing, so the peak
+     * itself is preferred unless its subharmonic is supported by other
+     * harmonics.
+     */
+    static double fundamental(float[] power, int size, double bin, double lowest_bin)
+    {
+        double best = bin;
+        double best_score = harmonicSum(power, size, bin);
+        for (int m = 2; m <= MAX_SUBHARMONIC; ++m) {
+            double candidate = bin / m;
+            if (candidate < lowest_bin) {
+                break;
+            }
+
+            double score = harmonicSum(power, size, candidate);
+            if (score > best_score) {
+                best_score = score;
+                best = candidate;
+            }
+        }
+
+        return best;
+    }
+
+    private static double harmonicSum(float[] power, int size, double bin)
+    {
+        double sum = 0;
+        double weight = 1;
+        for (int h = 1; h <= HARMONICS; ++h) {
+            int center = (int) Math.round(bin * h);
+            if (center < 2 || center + 2 >= size) {
+                break;
+            }
+
+            double m = 0;
+            for (int i = center - 2; i <= center + 2; ++i) {
+                m = Math.max(m, power[i]);
+            }
+            sum += weight * Math.sqrt(m);
+            weight *= HARMONIC_WEIGHT;
+        }
+
+        return sum;
+    }
+
+    /*
+     * Part of power in the main lobe around the peak, clean tone has most
+     * of its power there, noise spreads it over the whole spectrum
+     */
+    static double clarity(float[] power, int from, int to, int peak)
+    {
+        double total = 0;
+        for (int j = from; j < to; ++j) {
+            total += power[j];
+        }
+
+        double lobe = 0;
+        for (int j = Math.max(from, peak - LOBE); j <= Math.min(to - 1, peak + LOBE); ++j) {
+            lobe += power[j];
+        }
+
+        return total > 0 ? lobe / total : 0;
+    }
+
+    /*
+     * Part of power of the notes in the harmonics of the note for analyses
+     * with one amplitude per semitone
+     */
+    static double noteClarity(double[] strength, int count, int note)
+    {
+        double total = 0;
+        for (int n = 0; n < count; ++n) {
+            total += strength[n] * strength[n];
+        }
+
+        double harmonics = 0;
+        for (int h: HARMONIC_SEMITONES) {
+            if (note + h >= count) {
+                break;
+            }
+            harmonics += strength[note + h] * strength[note + h];
+        }
+
+        return total > 0 ? harmonics / total : 0;
+    }
+
+    /*
+     * Same as fundamental() for analyses with one value per semitone:
+     * note with the best weighted sum of amplitudes of its harmonics,
+     * harmonics above the last note are not counted.
+     */
+    static int fundamentalNote(double[] strength, int count)
+    {
+        int best = 0;
+        double best_score = -1;
+        for (int n = 0; n < count; ++n) {
+            double score = 0;
+            double weight = 1;
+            for (int h: HARMONIC_SEMITONES) {
+                if (n + h >= count) {
+                    break;
+                }
+                score += weight * strength[n + h];
+                weight *= HARMONIC_WEIGHT;
+            }
+            if (score > best_score) {
+                best_score = score;
+                best = n;
+            }
+        }
+
+        return best;
+    }
+}
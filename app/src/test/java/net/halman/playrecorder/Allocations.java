@@ -0,0 +1,58 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/*
+ * Heap allocation of the current thread, used by tests of allocation free
+ * hot paths
+ */
+
+class Allocations {
+    private static final int RUNS = 9;
+
+    static long allocatedBytes()
+    {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /*
+     * Median of bytes allocated by the work over several runs after a warm
+     * up run. The cost of reading the counter is subtracted, the median
+     * hides a single run disturbed by JIT or lazy init in management code.
+     */
+    static long median(Runnable work)
+    {
+        work.run();
+        long[] allocated = new long[RUNS];
+        for (int run = 0; run < RUNS; ++run) {
+            long before = allocatedBytes();
+            long calibration = allocatedBytes() - before;
+            before = allocatedBytes();
+            work.run();
+            allocated[run] = allocatedBytes() - before - calibration;
+        }
+
+        Arrays.sort(allocated);
+        return allocated[RUNS / 2];
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AnalysisConfigUnitTest {
+    private static short[] sine(double freq, int sample_rate, int length)
+    {
+        short[] result = new short[length];
+        for (int i = 0; i < length; ++i) {
+            result[i] = (short) (8000 * Math.sin(2 * Math.PI * freq * i / sample_rate));
+        }
+        return result;
+    }
+
+    @Test
+    public void windowAboutOneSecond()
+    {
+        int[] rates = {8000, 11025, 16000, 22050, 32000, 44100, 48000};
+        for (int rate: rates) {
+            AnalysisConfig config = AnalysisConfig.forSampleRate(rate, Frequency.ENGINE_CONSTANT_Q);
+            assertTrue(config.fftSize() <= 1.1 * rate);
+            assertTrue(config.fftSize() > 0.55 * rate);
+        }
+        assertEquals(8192, AnalysisConfig.forSampleRate(8000, Frequency.ENGINE_CONSTANT_Q).fftSize());
+        assertEquals(32768, AnalysisConfig.forSampleRate(48000, Frequency.ENGINE_CONSTANT_Q).fftSize());
+    }
+
+    @Test
+    public void constantUpdateRate()
+    {
+        int[] engines = {Frequency.ENGINE_CONSTANT_Q, Frequency.ENGINE_MCLEOD, Frequency.ENGINE_SLIDING_DFT,
+                Frequency.ENGINE_DUAL_FFT};
+        for (int engine: engines) {
+            long hop_8k = AnalysisConfig.forSampleRate(8000, engine).hopNanos();
+            long hop_48k = AnalysisConfig.forSampleRate(48000, engine).hopNanos();
+            assertEquals(1000000000L / AnalysisConfig.updatesPerSecond(engine), hop_8k);
+            assertEquals(hop_8k, hop_48k);
+        }
+    }
+
+    @Test
+    public void estimatorsAtNativeRate()
+    {
+        int[] engines = {Frequency.ENGINE_CONSTANT_Q, Frequency.ENGINE_MCLEOD, Frequency.ENGINE_DUAL_FFT};
+        for (int engine: engines) {
+            AnalysisConfig config = AnalysisConfig.forSampleRate(44100, engine);
+            short[] samples = sine(440, 44100, config.fftSize());
+            PitchEstimator e = config.createEstimator(engine, 261.63, 2093);
+            assertEquals(440, e.estimate(samples, 0, samples.length), 1);
+        }
+    }
+
+    @Test
+    public void storedEngine()
+    {
+        assertEquals(Frequency.ENGINE_DUAL_FFT, AnalysisConfig.storedEngine(Frequency.ENGINE_LEGACY_FFT));
+        assertEquals(Frequency.ENGINE_CONSTANT_Q, AnalysisConfig.storedEngine(Frequency.ENGINE_CONSTANT_Q));
+        assertEquals(Frequency.ENGINE_MCLEOD, AnalysisConfig.storedEngine(Frequency.ENGINE_MCLEOD));
+    }
+
+    @Test
+    public void probe()
+    {
+        // the last rate is the fallback
+        assertEquals(8000, AnalysisConfig.probe(new int[] {8000}, Frequency.ENGINE_CONSTANT_Q).sample_rate);
+        int rate = AnalysisConfig.probe(new int[] {48000, 8000}, Frequency.ENGINE_CONSTANT_Q).sample_rate;
+        assertTrue(rate == 48000 || rate == 8000);
+        assertEquals(Frequency.ENGINE_FIXED_FFT, AnalysisConfig.probe(new int[] {8000}, Frequency.ENGINE_FIXED_FFT).engine);
+    }
+
+    private static AnalysisConfig measured(int engine, long update_nanos)
+    {
+        AnalysisConfig config = AnalysisConfig.forSampleRate(8000, engine);
+        config.update_nanos = update_nanos;
+        return config;
+    }
+
+    @Test
+    public void fixedPointFallback()
+    {
+        long hop = AnalysisConfig.forSampleRate(8000, Frequency.ENGINE_DUAL_FFT).hopNanos();
+        AnalysisConfig floating = measured(Frequency.ENGINE_DUAL_FFT, hop);
+        // weak FPU, fixed point fits and is faster
+        AnalysisConfig fixed = measured(Frequency.ENGINE_FIXED_FFT, hop / 4);
+        assertEquals(Frequency.ENGINE_FIXED_FFT, AnalysisConfig.fallback(floating, fixed).engine);
+
+        // fixed point does not fit or is slower, floating point FFT gets smaller
+        fixed = measured(Frequency.ENGINE_FIXED_FFT, 2 * hop);
+        AnalysisConfig config = AnalysisConfig.fallback(floating, fixed);
+        assertEquals(Frequency.ENGINE_DUAL_FFT, config.engine);
+        assertTrue(config.fftSize() < floating.fftSize());
+        assertTrue(config.fits());
+
+        // floating point fits, nothing changes
+        floating = measured(Frequency.ENGINE_DUAL_FFT, hop / 4);
+        assertSame(floating, AnalysisConfig.fallback(floating, fixed));
+    }
+}
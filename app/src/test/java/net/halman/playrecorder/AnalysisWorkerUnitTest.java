@@ -0,0 +1,128 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AnalysisWorkerUnitTest {
+    private static class Counter implements Runnable {
+        volatile int count = 0;
+        volatile Thread thread = null;
+
+        public void run()
+        {
+            thread = Thread.currentThread();
+            // the caller has to wait for the slow task
+            long end = System.nanoTime() + 100000;
+            while (System.nanoTime() < end) {
+                Thread.yield();
+            }
+            count = count + 1;
+        }
+    }
+
+    @Test
+    public void runsOnWorker()
+    {
+        AnalysisWorker worker = new AnalysisWorker("test");
+        worker.start();
+        Counter task = new Counter();
+        worker.submit(task);
+        assertTrue(worker.await());
+        assertEquals(1, task.count);
+        assertNotSame(Thread.currentThread(), task.thread);
+        worker.stop();
+    }
+
+    @Test
+    public void awaitsEveryTask()
+    {
+        AnalysisWorker worker = new AnalysisWorker("test");
+        worker.start();
+        Counter task = new Counter();
+        for (int i = 1; i <= 200; ++i) {
+            worker.submit(task);
+            assertTrue(worker.await());
+            assertEquals(i, task.count);
+        }
+        worker.stop();
+    }
+
+    // without the worker surviving the failure await() would block forever
+    @Test(timeout = 5000)
+    public void survivesFailedTask()
+    {
+        AnalysisWorker worker = new AnalysisWorker("test");
+        worker.start();
+        Runnable failing = new Runnable() {
+            public void run()
+            {
+                throw new StackOverflowError("test");
+            }
+        };
+        worker.submit(failing);
+        assertTrue(worker.await());
+        assertTrue(worker.failure() instanceof StackOverflowError);
+
+        // the failure belongs to the failed task only
+        Counter task = new Counter();
+        worker.submit(task);
+        assertTrue(worker.await());
+        assertEquals(1, task.count);
+        assertNull(worker.failure());
+        worker.stop();
+    }
+
+    /*
+     * Long and short window estimations in parallel give the same results
+     * as one after another
+     */
+    @Test
+    public void parallelEstimation()
+    {
+        final short[] samples = PCMFixtures.tone(440, 8192, 1);
+        final PitchEstimator precise = new FFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 13, 8192, 174.61, 3136);
+        PitchEstimator fast = new FFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 11, 2048, 174.61, 3136);
+        final double[] result = new double[1];
+        Runnable task = new Runnable() {
+            public void run()
+            {
+                result[0] = precise.estimate(samples, 0, samples.length);
+            }
+        };
+
+        double expected_precise = precise.estimate(samples, 0, samples.length);
+        double expected_fast = fast.estimate(samples, 6144, samples.length);
+
+        AnalysisWorker worker = new AnalysisWorker("test");
+        worker.start();
+        for (int i = 0; i < 20; ++i) {
+            worker.submit(task);
+            double fast_result = fast.estimate(samples, 6144, samples.length);
+            assertTrue(worker.await());
+            assertEquals(expected_precise, result[0], 0);
+            assertEquals(expected_fast, fast_result, 0);
+        }
+        worker.stop();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AudioRingBufferUnitTest {
+    private static short[] sequence(int start, int count)
+    {
+        short[] result = new short[count];
+        for (int i = 0; i < count; ++i) {
+            result[i] = (short) (start + i);
+        }
+        return result;
+    }
+
+    @Test
+    public void capacity()
+    {
+        assertEquals(16384, new AudioRingBuffer(16384).capacity());
+        assertEquals(16384, new AudioRingBuffer(10000).capacity());
+    }
+
+    @Test
+    public void latest()
+    {
+        AudioRingBuffer ring = new AudioRingBuffer(16);
+        short[] dst = new short[4];
+        ring.write(sequence(0, 10), 10);
+        ring.write(sequence(10, 10), 10);
+        assertEquals(20, ring.latest(dst, 4));
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(16 + i, dst[i]);
+        }
+    }
+
+    @Test
+    public void dropped()
+    {
+        AudioRingBuffer ring = new AudioRingBuffer(16);
+        short[] dst = new short[4];
+        for (int i = 0; i < 5; ++i) {
+            ring.write(sequence(i * 8, 8), 8);
+        }
+        // 40 samples written, only last 16 are kept
+        assertTrue(ring.read(dst, 4));
+        assertEquals(24, ring.dropped());
+        assertEquals(24, dst[0]);
+        assertEquals(28, ring.readPosition());
+    }
+
+    @Test
+    public void producerConsumer() throws InterruptedException
+    {
+        final int total = 200000;
+        final AudioRingBuffer ring = new AudioRingBuffer(total + 1);
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < total; i += 100) {
+                    ring.write(sequence(i, 100), 100);
+                }
+            }
+        });
+        producer.start();
+
+        short[] dst = new short[300];
+        for (int i = 0; i + dst.length <= total; i += dst.length) {
+            assertTrue(ring.read(dst, dst.length));
+            for (int j = 0; j < dst.length; ++j) {
+                assertEquals((short) (i + j), dst[j]);
+            }
+        }
+        producer.join();
+        assertEquals(0, ring.dropped());
+    }
+
+    /*
+     * Chunk which is being written but is not published yet overwrites
+     * the oldest samples too, the latest window must not contain them.
+     */
+    @Test
+    public void latestWhileWriting() throws InterruptedException
+    {
+        final int chunk = 512;
+        final int total = 8000000;
+        final AudioRingBuffer ring = new AudioRingBuffer(1024);
+        final short[][] chunks = new short[total / chunk][];
+        for (int i = 0; i < chunks.length; ++i) {
+            chunks[i] = sequence(i * chunk, chunk);
+        }
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                for (short[] samples: chunks) {
+                    ring.write(samples, chunk);
+                }
+            }
+        });
+        producer.start();
+
+        short[] dst = new short[ring.capacity() - chunk / 2];
+        assertTrue(ring.await(dst.length));
+        while (ring.position() < total) {
+            long end = ring.latest(dst, dst.length);
+            for (int j = 0; j < dst.length; ++j) {
+                assertEquals((short) (end - dst.length + j), dst[j]);
+            }
+        }
+        producer.join();
+    }
+
+    @Test(timeout = 5000)
+    public void closeWakesConsumer() throws InterruptedException
+    {
+        final AudioRingBuffer ring = new AudioRingBuffer(16);
+        ring.write(sequence(0, 8), 8);
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                }
+                ring.close();
+            }
+        });
+        producer.start();
+
+        short[] dst = new short[4];
+        assertTrue(ring.read(dst, 4));
+        // nothing more comes, the consumer does not wait forever
+        assertFalse(ring.await(100));
+        assertFalse(ring.read(dst, 8));
+        assertTrue(ring.closed());
+        producer.join();
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FFTUnitTest {
+    private static final int EXP = 13;
+    private static final int SIZE = 1 << EXP;
+
+    // original implementation with cos/sin calls in the butterfly loop
+    private static void referenceFFT(int[] bitreverse, double[] real, double[] img)
+    {
+        int n, n2, i, k, kn2, l, p;
+        double ang, s, c, tr, ti;
+
+        n = 1 << EXP;
+        n2 = n / 2;
+
+        for (l = 0; l < EXP; ++l) {
+            for (k = 0; k < n; k += n2) {
+                for(i = 0; i < n2; ++i, ++k) {
+                    p = bitreverse[k / n2];
+                    ang = Math.PI * 2 * p / n;
+                    c = Math.cos(ang);
+                    s = Math.sin(ang);
+
+                    kn2 = k + n2;
+                    tr = real[kn2] * c + img[kn2] * s;
+                    ti = img[kn2] * c - real[kn2] * s;
+                    real[kn2] = real[k] - tr;
+                    img[kn2] = img[k] - ti;
+                    real[k] += tr;
+                    img[k] += ti;
+                }
+            }
+            n2 /= 2;
+        }
+
+        for (k = 0; k < n; ++k) {
+            i = bitreverse[k];
+            if (i <= k)
+                continue;
+            tr = real[k];
+            ti = img[k];
+            real[k] = real[i];
+            img[k] = img[i];
+            real[i] = tr;
+            img[i] = ti;
+        }
+    }
+
+    private static int[] bitreverse()
+    {
+        int[] result = new int[SIZE];
+        for (int i = 0; i < SIZE; ++i) {
+            int k = 0;
+            for (int j = 0; j < EXP; ++j) {
+                k *= 2;
+                if ((i & (1 << j)) != 0) {
+                    k += 1;
+                }
+            }
+            result[i] = k;
+        }
+        return result;
+    }
+
+    private static float[] randomSignal(long seed)
+    {
+        Random r = new Random(seed);
+        float[] result = new float[SIZE];
+        for (int i = 0; i < SIZE; ++i) {
+            result[i] = r.nextInt(65536) - 32768;
+        }
+        return result;
+    }
+
+    private static double[] toDouble(float[] a)
+    {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; ++i) {
+            result[i] = a[i];
+        }
+        return result;
+    }
+
+    // float transform is compared with the double one relatively to the signal energy
+    private static double tolerance(float[] signal)
+    {
+        double sum = 0;
+        for (float v: signal) {
+            sum += v * v;
+        }
+        return 1e-5 * Math.sqrt(sum * SIZE);
+    }
+
+    @Test
+    public void sameAsReference()
+    {
+        FFT fft = new FFT(EXP);
+        float[] real = randomSignal(1);
+        float[] img = new float[SIZE];
+        double[] ref_real = toDouble(real);
+        double[] ref_img = new double[SIZE];
+        double delta = tolerance(real);
+
+        fft.transform(real, img, false);
+        referenceFFT(bitreverse(), ref_real, ref_img);
+
+        for (int i = 0; i < SIZE; ++i) {
+            assertEquals(ref_real[i], real[i], delta);
+            assertEquals(ref_img[i], img[i], delta);
+        }
+    }
+
+    @Test
+    public void sineWave()
+    {
+        FFT fft = new FFT(EXP);
+        float[] real = new float[SIZE];
+        float[] img = new float[SIZE];
+        int bin = 440;
+        for (int i = 0; i < SIZE; ++i) {
+            real[i] = (float) Math.cos(2 * Math.PI * bin * i / SIZE);
+        }
+
+        fft.transform(real, img, true);
+        assertEquals(0.5, real[bin], 1e-5);
+        assertEquals(0.5, real[SIZE - bin], 1e-5);
+        assertEquals(0.0, real[bin + 1], 1e-5);
+        assertEquals(0.0, img[bin], 1e-5);
+    }
+
+    @Test
+    public void realInput()
+    {
+        FFT fft = new FFT(EXP);
+        RealFFT real_fft = new RealFFT(EXP);
+        float[] real = randomSignal(3);
+        float[] img = new float[SIZE];
+        float[] half_real = real.clone();
+        float[] half_img = new float[SIZE / 2];
+        double delta = tolerance(real);
+
+        fft.transform(real, img, false);
+        real_fft.transform(half_real, half_real, half_img);
+
+        int max = 0;
+        int half_max = 0;
+        for (int i = 0; i < SIZE / 2; ++i) {
+            assertEquals(real[i], half_real[i], delta);
+            assertEquals(img[i], half_img[i], delta);
+            if (real[i] * real[i] + img[i] * img[i] > real[max] * real[max] + img[max] * img[max]) {
+                max = i;
+            }
+            if (half_real[i] * half_real[i] + half_img[i] * half_img[i] >
+                    half_real[half_max] * half_real[half_max] + half_img[half_max] * half_img[half_max]) {
+                half_max = i;
+            }
+        }
+        assertEquals(max, half_max);
+    }
+
+    private static int[] toInt(float[] a)
+    {
+        int[] result = new int[a.length];
+        for (int i = 0; i < a.length; ++i) {
+            result[i] = (int) a[i];
+        }
+        return result;
+    }
+
+    /*
+     * Fixed point result scaled back is compared with the double one, the
+     * error is relative to the typical bin magnitude of the signal. Q15 block
+     * floating point gives about 65 dB SNR on 8192 points, single bins may
+     * be off by few times more than the average.
+     */
+    @Test
+    public void fixedSameAsReference()
+    {
+        FixedFFT fft = new FixedFFT(EXP);
+        float[] signal = randomSignal(4);
+        int[] real = toInt(signal);
+        int[] img = new int[SIZE];
+        double[] ref_real = toDouble(signal);
+        double[] ref_img = new double[SIZE];
+        double rms = 0;
+        for (float v: signal) {
+            rms += v * v;
+        }
+        double delta = 5e-3 * Math.sqrt(rms);
+
+        int shift = fft.transform(real, img);
+        referenceFFT(bitreverse(), ref_real, ref_img);
+
+        for (int i = 0; i < SIZE; ++i) {
+            assertEquals(ref_real[i], Math.scalb((double) real[i], shift), delta);
+            assertEquals(ref_img[i], Math.scalb((double) img[i], shift), delta);
+        }
+    }
+
+    @Test
+    public void fixedSineWave()
+    {
+        FixedFFT fft = new FixedFFT(EXP);
+        int[] real = new int[SIZE];
+        int[] img = new int[SIZE];
+        int bin = 440;
+        for (int i = 0; i < SIZE; ++i) {
+            real[i] = (int) Math.round(32767 * Math.cos(2 * Math.PI * bin * i / SIZE));
+        }
+
+        int shift = fft.transform(real, img);
+        double peak = Math.scalb((double) real[bin], shift);
+        assertEquals(0.5 * 32767 * SIZE, peak, 0.5 * 32767 * SIZE * 1e-4);
+        // rounding noise stays 80 dB below the peak
+        for (int i = 0; i < SIZE; ++i) {
+            if (i != bin && i != SIZE - bin) {
+                assertTrue(Math.scalb(Math.hypot(real[i], img[i]), shift) < peak * 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void fixedRealInput()
+    {
+        RealFFT real_fft = new RealFFT(EXP);
+        FixedRealFFT fixed_fft = new FixedRealFFT(EXP);
+        float[] signal = randomSignal(5);
+        float[] real = new float[SIZE / 2];
+        float[] img = new float[SIZE / 2];
+        int[] fixed_real = toInt(signal);
+        int[] fixed_img = new int[SIZE / 2];
+        double rms = 0;
+        for (float v: signal) {
+            rms += v * v;
+        }
+        double delta = 5e-3 * Math.sqrt(rms);
+
+        real_fft.transform(signal, real, img);
+        int shift = fixed_fft.transform(fixed_real, fixed_real, fixed_img);
+
+        for (int i = 0; i < SIZE / 2; ++i) {
+            assertEquals(real[i], Math.scalb((double) fixed_real[i], shift), delta);
+            assertEquals(img[i], Math.scalb((double) fixed_img[i], shift), delta);
+        }
+    }
+
+    @Test
+    public void benchmark()
+    {
+        final int rounds = 20;
+        FFT fft = new FFT(EXP);
+        int[] br = bitreverse();
+        float[] signal = randomSignal(2);
+        double[] ref_signal = toDouble(signal);
+        double[] ref_real = new double[SIZE];
+        double[] ref_img = new double[SIZE];
+        float[] real = new float[SIZE];
+        float[] img = new float[SIZE];
+
+        // warm up
+        for (int i = 0; i < rounds; ++i) {
+            referenceFFT(br, ref_real, ref_img);
+            fft.transform(real, img, false);
+        }
+
+        long reference = System.nanoTime();
+        for (int i = 0; i < rounds; ++i) {
+            System.arraycopy(ref_signal, 0, ref_real, 0, SIZE);
+            Arrays.fill(ref_img, 0.0);
+            referenceFFT(br, ref_real, ref_img);
+        }
+        reference = System.nanoTime() - reference;
+
+        long tables = System.nanoTime();
+        for (int i = 0; i < rounds; ++i) {
+            System.arraycopy(signal, 0, real, 0, SIZE);
+            Arrays.fill(img, 0f);
+            fft.transform(real, img, false);
+        }
+        tables = System.nanoTime() - tables;
+
+        RealFFT real_fft = new RealFFT(EXP);
+        for (int i = 0; i < rounds; ++i) {
+            real_fft.transform(signal, real, img);
+        }
+        long real_input = System.nanoTime();
+        for (int i = 0; i < rounds; ++i) {
+            real_fft.transform(signal, real, img);
+        }
+        real_input = System.nanoTime() - real_input;
+
+        FixedRealFFT fixed_fft = new FixedRealFFT(EXP);
+        int[] fixed_signal = toInt(signal);
+        int[] fixed_real = new int[SIZE / 2];
+        int[] fixed_img = new int[SIZE / 2];
+        for (int i = 0; i < rounds; ++i) {
+            fixed_fft.transform(fixed_signal, fixed_real, fixed_img);
+        }
+        long fixed = System.nanoTime();
+        for (int i = 0; i < rounds; ++i) {
+            fixed_fft.transform(fixed_signal, fixed_real, fixed_img);
+        }
+        fixed = System.nanoTime() - fixed;
+
+        String times = "reference " + reference + " ns, twiddle tables " + tables +
+                " ns, real input " + real_input + " ns, fixed point real input " + fixed + " ns";
+        assertTrue(times, tables < reference);
+        // half size complex transform
+        assertTrue(times, real_input < tables);
+    }
+}
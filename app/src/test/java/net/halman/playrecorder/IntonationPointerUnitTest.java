@@ -0,0 +1,136 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntonationPointerUnitTest {
+    private static final int UPDATES = 8;
+    private static final int HOP = PCMFixtures.SAMPLE_RATE / UPDATES;
+    private static final long MS = 1000000L;
+
+    @Test
+    public void kinds()
+    {
+        IntonationPointer p = new IntonationPointer();
+        assertEquals(IntonationPointer.NO_SIGNAL, p.kind());
+        assertTrue(p.update(true, 5, 0));
+        assertEquals(IntonationPointer.OK, p.kind());
+        p.update(true, -20, 100 * MS);
+        assertEquals(IntonationPointer.NEAR, p.kind());
+        p.update(true, 45, 200 * MS);
+        assertEquals(IntonationPointer.FAR, p.kind());
+        assertEquals(36, p.offset());
+        assertFalse(p.update(true, 45, 300 * MS));
+    }
+
+    /*
+     * Short gaps between notes do not blink the pointer
+     */
+    @Test
+    public void holdsShortGap()
+    {
+        IntonationPointer p = new IntonationPointer();
+        p.update(true, 0, 0);
+        p.update(false, 0, 300 * MS);
+        assertNotEquals(IntonationPointer.NO_SIGNAL, p.kind());
+    }
+
+    /*
+     * Hold and decay take the same time at the update rate of every engine
+     */
+    @Test
+    public void holdInTime()
+    {
+        int[] engines = {Frequency.ENGINE_CONSTANT_Q, Frequency.ENGINE_MCLEOD, Frequency.ENGINE_SLIDING_DFT,
+                Frequency.ENGINE_GOERTZEL, Frequency.ENGINE_DUAL_FFT, Frequency.ENGINE_FIXED_FFT};
+        for (int engine: engines) {
+            long hop = 1000 * MS / AnalysisConfig.updatesPerSecond(engine);
+            IntonationPointer p = new IntonationPointer();
+            p.update(true, 40, 0);
+            long nanos = 0;
+            while (p.kind() != IntonationPointer.NO_SIGNAL) {
+                nanos += hop;
+                p.update(false, 0, nanos);
+            }
+            String msg = "engine " + engine + " no signal after " + nanos / MS + " ms";
+            assertTrue(msg, nanos >= IntonationPointer.HOLD_NANOS);
+            assertTrue(msg, nanos < IntonationPointer.HOLD_NANOS + hop);
+
+            // pointer is half way back one decay later
+            long release = nanos;
+            while (nanos < release + IntonationPointer.DECAY_NANOS) {
+                nanos += hop;
+                p.update(false, 0, nanos);
+            }
+            if (nanos == release + IntonationPointer.DECAY_NANOS) {
+                assertEquals(msg, 16, p.offset());
+            }
+            p.update(false, 0, release + 10 * IntonationPointer.DECAY_NANOS);
+            assertEquals(msg, 0, p.offset());
+        }
+    }
+
+    /*
+     * Tone followed by silence: once the gate closes the analysis reports
+     * zero every hop and the pointer reaches no signal after the hold
+     */
+    @Test
+    public void silenceReachesNoSignal()
+    {
+        SilenceGate gate = new SilenceGate(UPDATES);
+        IntonationPointer p = new IntonationPointer();
+        short[] tone = PCMFixtures.tone(440, 3 * PCMFixtures.SAMPLE_RATE, 1);
+        long position = 0;
+        for (int from = 0; from + HOP <= tone.length; from += HOP) {
+            assertFalse(gate.silent(tone, from, from + HOP));
+            position += HOP;
+            p.update(true, 3, nanos(position));
+        }
+        assertEquals(IntonationPointer.OK, p.kind());
+
+        long last_tone = nanos(position);
+        short[] silence = PCMFixtures.silence(3 * PCMFixtures.SAMPLE_RATE, 2);
+        int closed_hops = 0;
+        for (int from = 0; from + HOP <= silence.length; from += HOP) {
+            if (gate.silent(silence, from, from + HOP)) {
+                closed_hops++;
+            }
+            position += HOP;
+            // no tone is found whether the gate is closed or not
+            p.update(false, 0, nanos(position));
+            if (nanos(position) - last_tone >= IntonationPointer.HOLD_NANOS) {
+                assertEquals(IntonationPointer.NO_SIGNAL, p.kind());
+            }
+        }
+        assertTrue(closed_hops > 0);
+        assertEquals(IntonationPointer.NO_SIGNAL, p.kind());
+        assertEquals(0, p.offset());
+    }
+
+    private static long nanos(long position)
+    {
+        return position * 1000 * MS / PCMFixtures.SAMPLE_RATE;
+    }
+}
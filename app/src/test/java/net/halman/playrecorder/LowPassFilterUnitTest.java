@@ -0,0 +1,90 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LowPassFilterUnitTest {
+    private static double rms(short[] samples, int from, int to)
+    {
+        double sum = 0;
+        for (int i = from; i < to; ++i) {
+            sum += samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    /*
+     * Filtering in capture chunks gives the same signal as filtering all
+     * samples at once, the state is carried over.
+     */
+    @Test
+    public void chunksEqualWhole()
+    {
+        short[] whole = PCMFixtures.tone(440, 8192, 1);
+        short[] chunked = whole.clone();
+        new LowPassFilter(PCMFixtures.SAMPLE_RATE, 1046.5).process(whole, 0, whole.length);
+
+        LowPassFilter filter = new LowPassFilter(PCMFixtures.SAMPLE_RATE, 1046.5);
+        for (int from = 0; from < chunked.length; from += 100) {
+            filter.process(chunked, from, Math.min(from + 100, chunked.length));
+        }
+        assertArrayEquals(whole, chunked);
+    }
+
+    @Test
+    public void passBand()
+    {
+        short[] samples = PCMFixtures.tone(440, new double[] {1.0}, 8192, 2);
+        new LowPassFilter(PCMFixtures.SAMPLE_RATE, 1046.5).process(samples, 0, samples.length);
+        double expected = 8000 / Math.sqrt(2);
+        assertEquals(expected, rms(samples, 1024, samples.length), expected * 0.05);
+    }
+
+    @Test
+    public void stopBand()
+    {
+        // two octaves above the cut off, two passes of 12 dB per octave
+        short[] samples = PCMFixtures.tone(4 * 1046.5, new double[] {1.0}, 8192, 3);
+        new LowPassFilter(PCMFixtures.SAMPLE_RATE, 1046.5).process(samples, 0, samples.length);
+        assertTrue(rms(samples, 1024, samples.length) < 8000 * 0.02);
+    }
+
+    @Test
+    public void noOverflow()
+    {
+        // square wave overshoots after filtering, it has to be clipped
+        short[] samples = new short[4096];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (i / 20) % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+        }
+        new LowPassFilter(PCMFixtures.SAMPLE_RATE, 1046.5).process(samples, 0, samples.length);
+        // wrapped overshoot would add sign changes, two per period are expected
+        int changes = 0;
+        for (int i = 1025; i < samples.length; ++i) {
+            if ((samples[i - 1] < 0) != (samples[i] < 0)) {
+                ++changes;
+            }
+        }
+        assertEquals((samples.length - 1024) / 20, changes, 2);
+    }
+}
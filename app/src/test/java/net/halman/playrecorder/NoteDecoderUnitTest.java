@@ -0,0 +1,176 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NoteDecoderUnitTest {
+    // alto recorder f4 .. g6 at 20 updates per second
+    private static final double LOWEST = 349.23;
+    private static final double HIGHEST = 1567.98;
+    private static final int UPDATES = 20;
+
+    private final double[] freq = new double[2];
+    private final double[] confidence = new double[2];
+
+    private static double note(int n)
+    {
+        return LOWEST * Math.pow(2, n / 12.0);
+    }
+
+    // one candidate, zero frequency is a frame without pitch
+    private int step(NoteDecoder decoder, double f)
+    {
+        freq[0] = f;
+        confidence[0] = f > 0 ? 1 : 0;
+        return decoder.step(freq, confidence, 1);
+    }
+
+    @Test
+    public void lag()
+    {
+        assertEquals(1, new NoteDecoder(LOWEST, HIGHEST, 20).lag());
+        assertEquals(3, new NoteDecoder(LOWEST, HIGHEST, 50).lag());
+        // an update is longer than the lag may be
+        assertEquals(0, new NoteDecoder(LOWEST, HIGHEST, 10).lag());
+        assertEquals(0, new NoteDecoder(LOWEST, HIGHEST, 4).lag());
+        assertEquals(27, new NoteDecoder(LOWEST, HIGHEST, UPDATES).noteCount());
+    }
+
+    /*
+     * Time from the first update of a new note to its decision, at the
+     * update rate of every engine: within 60 ms, or one update when the
+     * updates are slower than that
+     */
+    @Test
+    public void delay()
+    {
+        int[] engines = {Frequency.ENGINE_CONSTANT_Q, Frequency.ENGINE_MCLEOD, Frequency.ENGINE_SLIDING_DFT,
+                Frequency.ENGINE_GOERTZEL, Frequency.ENGINE_DUAL_FFT, Frequency.ENGINE_FIXED_FFT};
+        for (int engine: engines) {
+            int updates = AnalysisConfig.updatesPerSecond(engine);
+            NoteDecoder decoder = new NoteDecoder(LOWEST, HIGHEST, updates);
+            for (int i = 0; i < 10; ++i) {
+                step(decoder, note(5));
+            }
+            int steps = 0;
+            while (step(decoder, note(7)) != 7) {
+                ++steps;
+            }
+            int delay_ms = steps * 1000 / updates;
+            assertTrue("engine " + engine + " delay " + delay_ms, delay_ms <= decoder.delayMillis());
+            assertTrue("engine " + engine + " bound " + decoder.delayMillis(),
+                    decoder.delayMillis() <= Math.max(60, 1000 / updates));
+        }
+    }
+
+    @Test
+    public void steadyNote()
+    {
+        NoteDecoder decoder = new NoteDecoder(LOWEST, HIGHEST, UPDATES);
+        int result = 0;
+        for (int i = 0; i < 20; ++i) {
+            // intonation wobbles a bit
+            result = step(decoder, note(5) * Math.pow(2, (i % 3 - 1) * 20 / 1200.0));
+        }
+        assertEquals(5, result);
+    }
+
+    /*
+     * Single wrong estimates (octave jump, neighbour, dropout) do not
+     * change the decided note
+     */
+    @Test
+    public void outliers()
+    {
+        NoteDecoder decoder = new NoteDecoder(LOWEST, HIGHEST, UPDATES);
+        double[] outliers = {note(17), note(6), 0, note(4)};
+        for (int i = 0; i < 10; ++i) {
+            step(decoder, note(5));
+        }
+        for (double outlier: outliers) {
+            assertEquals(5, step(decoder, outlier));
+            for (int i = 0; i < 5; ++i) {
+                assertEquals(5, step(decoder, note(5)));
+            }
+        }
+    }
+
+    @Test
+    public void noteChangeWithinLag()
+    {
+        NoteDecoder decoder = new NoteDecoder(LOWEST, HIGHEST, UPDATES);
+        for (int i = 0; i < 10; ++i) {
+            step(decoder, note(5));
+        }
+        step(decoder, note(7));
+        // decision about the first frame of the new note comes lag updates later
+        for (int i = 0; i < decoder.lag() - 1; ++i) {
+            step(decoder, note(7));
+        }
+        assertEquals(7, step(decoder, note(7)));
+    }
+
+    @Test
+    public void silence()
+    {
+        NoteDecoder decoder = new NoteDecoder(LOWEST, HIGHEST, UPDATES);
+        assertEquals(NoteDecoder.SILENCE, step(decoder, 0));
+        for (int i = 0; i < 10; ++i) {
+            step(decoder, note(12));
+        }
+        int result = 0;
+        for (int i = 0; i < 10; ++i) {
+            result = step(decoder, 0);
+        }
+        assertEquals(NoteDecoder.SILENCE, result);
+    }
+
+    @Test
+    public void outOfRange()
+    {
+        NoteDecoder decoder = new NoteDecoder(LOWEST, HIGHEST, UPDATES);
+        int result = 0;
+        for (int i = 0; i < 10; ++i) {
+            result = step(decoder, 200);
+        }
+        assertEquals(NoteDecoder.SILENCE, result);
+    }
+
+    /*
+     * Fast and precise estimates disagree, the confident one wins
+     */
+    @Test
+    public void candidates()
+    {
+        NoteDecoder decoder = new NoteDecoder(LOWEST, HIGHEST, UPDATES);
+        int result = 0;
+        for (int i = 0; i < 10; ++i) {
+            freq[0] = note(3);
+            confidence[0] = 0.3;
+            freq[1] = note(8);
+            confidence[1] = 0.9;
+            result = decoder.step(freq, confidence, 2);
+        }
+        assertEquals(8, result);
+    }
+}
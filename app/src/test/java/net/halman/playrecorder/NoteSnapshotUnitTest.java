@@ -0,0 +1,130 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NoteSnapshotUnitTest {
+    private static final int[] INSTRUMENTS = {
+            Constants.RECORDER_SOPRANINO_BAROQUE, Constants.RECORDER_SOPRANO_BAROQUE,
+            Constants.RECORDER_ALT_BAROQUE, Constants.RECORDER_TENOR_BAROQUE,
+            Constants.RECORDER_BASS_BAROQUE, Constants.RECORDER_ALT_GERMAN,
+            Constants.TIN_WHISTLE_D, Constants.TIN_WHISTLE_G, Constants.TIN_WHISTLE_C,
+            Constants.FIFE};
+
+    private static MusicalInstrument instrument(int type)
+    {
+        if (Constants.isTinWhistle(type)) {
+            return new TinWhistle(type);
+        }
+        if (Constants.isFife(type)) {
+            return new YamahaFife(type);
+        }
+        return new Recorder(type);
+    }
+
+    /*
+     * Snapshot gives the same note as resolving the frequency on the scale
+     * and instrument directly (as the UI did before)
+     */
+    @Test
+    public void sameAsScale()
+    {
+        PitchEvent event = new PitchEvent();
+        for (int type: INSTRUMENTS) {
+            MusicalInstrument instrument = instrument(type);
+            for (int signature = -7; signature <= 7; ++signature) {
+                Scale scale = new Scale(signature);
+                NoteSnapshot snapshot = new NoteSnapshot(scale, instrument);
+                for (int freq100 = 0; freq100 < 800000; freq100 += 37) {
+                    snapshot.resolve(freq100, event);
+                    Note n = scale.frequencyNearestNote(freq100);
+                    if (n == null || !instrument.canPlay(scale, n)) {
+                        assertFalse(event.playable);
+                        assertNull(event.note);
+                        continue;
+                    }
+
+                    String where = type + " " + signature + " " + freq100;
+                    assertTrue(where, event.playable);
+                    assertTrue(where, instrument.realNoteToApparentNote(n).equal(event.note));
+                    assertEquals(where, scale.frequencyCents(freq100, scale.noteAbsoluteValue(n)), event.cents);
+                }
+            }
+        }
+    }
+
+    /*
+     * Later changes of the scale do not change the snapshot
+     */
+    @Test
+    public void copiesScale()
+    {
+        Scale scale = new Scale(0);
+        MusicalInstrument instrument = new Recorder(Constants.RECORDER_SOPRANO_BAROQUE);
+        NoteSnapshot snapshot = new NoteSnapshot(scale, instrument);
+        scale.signature(-2);
+
+        // a#5 is b flat in the changed scale
+        PitchEvent event = new PitchEvent();
+        snapshot.resolve(93233, event);
+        assertTrue(event.playable);
+        assertEquals(Note.Accidentals.SHARP, event.note.accidentals());
+    }
+
+    /*
+     * Baroque a4 is a4 in the snapshot, scales with the same reference
+     * give the same notes
+     */
+    @Test
+    public void reference()
+    {
+        Scale scale = new Scale(0);
+        scale.reference(41500);
+        NoteSnapshot snapshot = new NoteSnapshot(scale, new Recorder(Constants.RECORDER_ALT_BAROQUE));
+        PitchEvent event = new PitchEvent();
+        snapshot.resolve(41500, event);
+        assertTrue(event.playable);
+        assertEquals(Note.a4, event.note.value());
+        assertEquals(0, event.cents);
+
+        // 25 cents up
+        snapshot.resolve((int) (41500 * Math.pow(2, 25 / 1200.0)), event);
+        assertEquals(Note.a4, event.note.value());
+        assertEquals(25, event.cents);
+    }
+
+    @Test
+    public void outOfRange()
+    {
+        NoteSnapshot snapshot = new NoteSnapshot(new Scale(0), new Recorder(Constants.RECORDER_SOPRANO_BAROQUE));
+        PitchEvent event = new PitchEvent();
+        snapshot.resolve(0, event);
+        assertFalse(event.playable);
+        snapshot.resolve(44000, event);
+        assertFalse(event.playable);
+        snapshot.resolve(Integer.MAX_VALUE, event);
+        assertFalse(event.playable);
+    }
+}
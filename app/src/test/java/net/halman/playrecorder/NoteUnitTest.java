@@ -0,0 +1,114 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NoteUnitTest {
+    @Test
+    public void interned()
+    {
+        Note n = Note.of(Note.a4, Note.Accidentals.SHARP, true);
+        assertSame(n, Note.of(Note.a4, Note.Accidentals.SHARP, true));
+        assertNotSame(n, Note.of(Note.a4, Note.Accidentals.SHARP, false));
+        assertEquals(Note.a4, n.value());
+        assertEquals(Note.Accidentals.SHARP, n.accidentals());
+        assertTrue(n.trill());
+        assertSame(n, Note.of(new Note(n)));
+
+        // out of the table the note is created, still immutable
+        Note high = Note.of(Note.c8 + 60, Note.Accidentals.NONE, false);
+        assertTrue(high.interned());
+        assertEquals(Note.c8 + 60, high.value());
+        assertFalse(new Note(n).interned());
+    }
+
+    @Test
+    public void immutable()
+    {
+        Note n = Note.of(Note.c4, Note.Accidentals.NONE, false);
+        try {
+            n.trill(true);
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            new Scale(0).noteUp(n);
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        assertEquals(Note.c4, n.value());
+        assertFalse(n.trill());
+
+        Note copy = new Note(n);
+        copy.trill(true);
+        assertTrue(copy.trill());
+    }
+
+    @Test
+    public void nextDegree()
+    {
+        Scale s = new Scale(-3);
+        for (int value = -24; value <= 36; ++value) {
+            Note n = new Note(value, Note.Accidentals.FLAT, value % 3 == 0);
+            Note up = new Note(n);
+            s.noteUp(up);
+            assertTrue(up.equal(s.nextDegree(n)));
+        }
+    }
+
+    private static void update(RecorderApp app, NoteSnapshot snapshot, PitchEvent event)
+    {
+        for (int freq100 = 52000; freq100 < 200000; freq100 += 1000) {
+            snapshot.resolve(freq100, event);
+            if (event.playable) {
+                app.apparentNote(event.note);
+            }
+            app.grips();
+            app.canPlay();
+            app.notePosition();
+        }
+    }
+
+    /*
+     * Pitch update and what the views read on draw do not allocate
+     */
+    @Test
+    public void noAllocation()
+    {
+        final RecorderApp app = new RecorderApp();
+        final NoteSnapshot snapshot = app.noteSnapshot();
+        final PitchEvent event = new PitchEvent();
+        long allocated = Allocations.median(new Runnable() {
+            @Override
+            public void run()
+            {
+                update(app, snapshot, event);
+            }
+        });
+        assertTrue("allocated " + allocated, allocated <= 0);
+    }
+}
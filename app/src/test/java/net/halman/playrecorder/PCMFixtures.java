@@ -0,0 +1,72 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import java.util.Random;
+
+/*
+ * Synthetic recordings used by pitch detection tests
+ */
+
+class PCMFixtures {
+    static final int SAMPLE_RATE = 8000;
+
+    /*
+     * Tone similar to recorder: fundamental with few weak harmonics
+     * and some breath noise.
+     */
+    static short[] tone(double freq, int length, long seed)
+    {
+        return tone(freq, new double[] {1.0, 0.3, 0.1, 0.05}, length, seed);
+    }
+
+    /*
+     * Tone with given amplitudes of harmonics, amplitudes[0] is the fundamental.
+     */
+    static short[] tone(double freq, double[] amplitudes, int length, long seed)
+    {
+        Random r = new Random(seed);
+        double phase = r.nextDouble() * 2 * Math.PI;
+        short[] result = new short[length];
+        for (int i = 0; i < length; ++i) {
+            double v = 0;
+            for (int h = 0; h < amplitudes.length; ++h) {
+                if (freq * (h + 1) < SAMPLE_RATE / 2) {
+                    v += amplitudes[h] * Math.sin((h + 1) * (2 * Math.PI * freq * i / SAMPLE_RATE + phase));
+                }
+            }
+            result[i] = (short) (8000 * v + 200 * r.nextGaussian());
+        }
+        return result;
+    }
+
+    static short[] silence(int length, long seed)
+    {
+        Random r = new Random(seed);
+        short[] result = new short[length];
+        for (int i = 0; i < length; ++i) {
+            result[i] = (short) (5 * r.nextGaussian());
+        }
+        return result;
+    }
+
+    static double cents(double expected, double actual)
+    {
+        return 1200 * Math.log(actual / expected) / Math.log(2);
+    }
+}
@@ -0,0 +1,543 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PitchEstimatorUnitTest {
+    private static final int BUFFER_SIZE = 8192;
+    private static final double HIGHEST_FREQ = 3136;
+    // f3 .. e7, tones above e7 are too short for McLeod at 8kHz
+    private static final double[] FREQUENCIES = {174.61, 261.63, 440.0, 698.46, 1046.5, 1567.98, 2093.0, 2637.02};
+
+    private static final int[] INSTRUMENTS = {
+            Constants.RECORDER_SOPRANINO_BAROQUE,
+            Constants.RECORDER_SOPRANO_BAROQUE,
+            Constants.RECORDER_ALT_BAROQUE,
+            Constants.RECORDER_TENOR_BAROQUE,
+            Constants.RECORDER_BASS_BAROQUE,
+            Constants.TIN_WHISTLE_D,
+            Constants.TIN_WHISTLE_G,
+            Constants.TIN_WHISTLE_C,
+            Constants.FIFE,
+    };
+
+    // overblown tone with second harmonic much stronger than the fundamental
+    private static final double[] OVERBLOWN = {0.3, 1.0, 0.3, 0.1};
+
+    private static PitchEstimator fft()
+    {
+        return new FFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 13, BUFFER_SIZE, FREQUENCIES[0], HIGHEST_FREQ);
+    }
+
+    private static PitchEstimator shortFft()
+    {
+        return new FFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 11, BUFFER_SIZE / 4, FREQUENCIES[0], HIGHEST_FREQ);
+    }
+
+    private static PitchEstimator goertzel()
+    {
+        return new GoertzelPitchEstimator(PCMFixtures.SAMPLE_RATE, BUFFER_SIZE, FREQUENCIES[0], HIGHEST_FREQ);
+    }
+
+    private static PitchEstimator fixedFft()
+    {
+        return new FixedFFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 13, BUFFER_SIZE, FREQUENCIES[0]);
+    }
+
+    private static PitchEstimator constantQ()
+    {
+        return new ConstantQPitchEstimator(PCMFixtures.SAMPLE_RATE, BUFFER_SIZE, FREQUENCIES[0], HIGHEST_FREQ);
+    }
+
+    private static MusicalInstrument instrument(int type)
+    {
+        if (Constants.isTinWhistle(type)) {
+            return new TinWhistle(type);
+        }
+        if (Constants.isFife(type)) {
+            return new YamahaFife(type);
+        }
+        return new Recorder(type);
+    }
+
+    private static PitchEstimator mcleod()
+    {
+        return new McLeodPitchEstimator(PCMFixtures.SAMPLE_RATE, 512, HIGHEST_FREQ);
+    }
+
+    @Test
+    public void fftAccuracy()
+    {
+        PitchEstimator e = fft();
+        for (double f: FREQUENCIES) {
+            short[] samples = PCMFixtures.tone(f, BUFFER_SIZE, 1);
+            assertEquals(0, PCMFixtures.cents(f, e.estimate(samples, 0, BUFFER_SIZE)), 1);
+        }
+    }
+
+    @Test
+    public void fftLastQuarterAccuracy()
+    {
+        PitchEstimator e = fft();
+        for (double f: FREQUENCIES) {
+            short[] samples = PCMFixtures.tone(f, BUFFER_SIZE, 2);
+            assertEquals(0, PCMFixtures.cents(f, e.estimate(samples, BUFFER_SIZE * 3 / 4, BUFFER_SIZE)), 1);
+        }
+    }
+
+    /*
+     * Fast path has its own quarter size FFT and window
+     */
+    @Test
+    public void fftShortWindowAccuracy()
+    {
+        PitchEstimator e = shortFft();
+        for (double f: FREQUENCIES) {
+            short[] samples = PCMFixtures.tone(f, BUFFER_SIZE, 2);
+            assertEquals(0, PCMFixtures.cents(f, e.estimate(samples, BUFFER_SIZE * 3 / 4, BUFFER_SIZE)), 1);
+        }
+    }
+
+    /*
+     * Integer path gives the same result as the floating point one
+     */
+    @Test
+    public void fixedFftAccuracy()
+    {
+        PitchEstimator e = fixedFft();
+        PitchEstimator reference = fft();
+        for (double f: FREQUENCIES) {
+            short[] samples = PCMFixtures.tone(f, BUFFER_SIZE, 1);
+            double pitch = e.estimate(samples, 0, BUFFER_SIZE);
+            assertEquals(0, PCMFixtures.cents(f, pitch), 1);
+            assertEquals(0, PCMFixtures.cents(reference.estimate(samples, 0, BUFFER_SIZE), pitch), 0.2);
+
+            short[] quiet = PCMFixtures.tone(f, BUFFER_SIZE, 1);
+            for (int i = 0; i < BUFFER_SIZE; ++i) {
+                quiet[i] /= 30;
+            }
+            assertEquals(0, PCMFixtures.cents(f, e.estimate(quiet, 0, BUFFER_SIZE)), 1);
+            short[] overblown = PCMFixtures.tone(f, OVERBLOWN, BUFFER_SIZE, 2);
+            assertEquals(0, PCMFixtures.cents(f, e.estimate(overblown, BUFFER_SIZE * 3 / 4, BUFFER_SIZE)), 5);
+        }
+    }
+
+    /*
+     * Two short windows 2000 samples apart, the second estimate is refined
+     * from the phase advance
+     */
+    private static double refined(PitchEstimator e, short[] samples, int window, int hop)
+    {
+        int end = samples.length - hop;
+        e.position(end);
+        e.estimate(samples, end - window, end);
+        e.position(samples.length);
+        return e.estimate(samples, samples.length - window, samples.length);
+    }
+
+    @Test
+    public void fftPhaseVocoder()
+    {
+        double[] detuned = {443.3, 1000.7};
+        for (double[] list: new double[][] {FREQUENCIES, detuned}) {
+            for (double f: list) {
+                short[] samples = PCMFixtures.tone(f, BUFFER_SIZE, 3);
+                assertEquals("freq " + f, 0, PCMFixtures.cents(f, refined(shortFft(), samples, BUFFER_SIZE / 4, 2000)), 0.05);
+                assertEquals("freq " + f, 0, PCMFixtures.cents(f, refined(constantQ(), samples, BUFFER_SIZE - 800, 800)), 0.05);
+            }
+        }
+    }
+
+    /*
+     * Phase of the previous tone must not bend the new one
+     */
+    @Test
+    public void phaseVocoderNoteChange()
+    {
+        double[] changes = {444, 446, 449, 452};
+        for (double f: changes) {
+            short[] samples = PCMFixtures.tone(440, BUFFER_SIZE, 4);
+            short[] next = PCMFixtures.tone(f, 2000, 5);
+            System.arraycopy(next, 0, samples, BUFFER_SIZE - next.length, next.length);
+            PitchEstimator e = new FFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 10, BUFFER_SIZE / 8, FREQUENCIES[0], HIGHEST_FREQ);
+            assertEquals("freq " + f, 0, PCMFixtures.cents(f, refined(e, samples, BUFFER_SIZE / 8, 2000)), 1);
+        }
+    }
+
+    @Test
+    public void mcleodAccuracy()
+    {
+        PitchEstimator e = mcleod();
+        for (double f: FREQUENCIES) {
+            short[] samples = PCMFixtures.tone(f, BUFFER_SIZE, 1);
+            assertEquals(0, PCMFixtures.cents(f, e.estimate(samples, 0, BUFFER_SIZE)), 2);
+        }
+    }
+
+    // estimator limited to the range of an instrument
+    private interface EstimatorFactory {
+        PitchEstimator create(double lowest, double highest);
+    }
+
+    /*
+     * Every note of every instrument as plain and as overblown tone,
+     * the detected pitch has to be the played note, not its harmonic.
+     * Last quarter of the window is checked as well with zero padding.
+     */
+    private static void instrumentRanges(EstimatorFactory factory, boolean zero_padding)
+    {
+        Scale scale = new Scale(0);
+        for (int type: INSTRUMENTS) {
+            MusicalInstrument instrument = instrument(type);
+            double lowest = scale.noteToFrequency(instrument.realLowestNote()) / 100.0;
+            double highest = scale.noteToFrequency(instrument.realHighestNote()) / 100.0;
+            PitchEstimator e = factory.create(lowest, highest);
+            int from = scale.noteAbsoluteValue(instrument.realLowestNote());
+            int to = scale.noteAbsoluteValue(instrument.realHighestNote());
+            for (int n = from; n <= to; ++n) {
+                double f = scale.noteToFrequency(new Note(n, Note.Accidentals.RELEASE, false)) / 100.0;
+                if (f > PCMFixtures.SAMPLE_RATE * 0.45) {
+                    // can not be recorded at this sample rate
+                    continue;
+                }
+
+                short[] plain = PCMFixtures.tone(f, BUFFER_SIZE, n);
+                short[] overblown = PCMFixtures.tone(f, OVERBLOWN, BUFFER_SIZE, n);
+                String msg = "instrument " + type + " note " + n;
+                assertEquals(msg, 0, PCMFixtures.cents(f, e.estimate(plain, 0, BUFFER_SIZE)), 5);
+                assertEquals(msg, 0, PCMFixtures.cents(f, e.estimate(overblown, 0, BUFFER_SIZE)), 5);
+                if (zero_padding) {
+                    assertEquals(msg, 0, PCMFixtures.cents(f, e.estimate(plain, BUFFER_SIZE * 3 / 4, BUFFER_SIZE)), 5);
+                    assertEquals(msg, 0, PCMFixtures.cents(f, e.estimate(overblown, BUFFER_SIZE * 3 / 4, BUFFER_SIZE)), 5);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void instrumentRanges()
+    {
+        instrumentRanges(new EstimatorFactory() {
+            @Override
+            public PitchEstimator create(double lowest, double highest)
+            {
+                return new FFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 13, BUFFER_SIZE, lowest, highest);
+            }
+        }, true);
+    }
+
+    @Test
+    public void goertzelAccuracy()
+    {
+        PitchEstimator e = goertzel();
+        for (double f: FREQUENCIES) {
+            short[] samples = PCMFixtures.tone(f, BUFFER_SIZE, 1);
+            assertEquals(0, PCMFixtures.cents(f, e.estimate(samples, 0, BUFFER_SIZE)), 2);
+        }
+    }
+
+    /*
+     * Out of tune playing is measured, not rounded to the note
+     */
+    @Test
+    public void goertzelIntonation()
+    {
+        PitchEstimator e = goertzel();
+        double[] offsets = {-45, -30, -10, 10, 30, 45};
+        for (double cents: offsets) {
+            double f = 440 * Math.pow(2, cents / 1200);
+            short[] samples = PCMFixtures.tone(f, BUFFER_SIZE, 2);
+            assertEquals("offset " + cents, 0, PCMFixtures.cents(f, e.estimate(samples, 0, BUFFER_SIZE)), 3);
+        }
+    }
+
+    /*
+     * Best time of one estimation in nanoseconds after warm up
+     */
+    private static long nanos(PitchEstimator e, short[] samples, int from)
+    {
+        for (int i = 0; i < 100; ++i) {
+            e.estimate(samples, from, samples.length);
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 20; ++round) {
+            long time = System.nanoTime();
+            for (int i = 0; i < 10; ++i) {
+                e.estimate(samples, from, samples.length);
+            }
+            best = Math.min(best, (System.nanoTime() - time) / 10);
+        }
+        return best;
+    }
+
+    /*
+     * Bank limited to the range of an instrument costs a fraction of the
+     * FFT (a fifth to a half measured)
+     */
+    @Test
+    public void goertzelCost()
+    {
+        Scale scale = new Scale(0);
+        short[] samples = PCMFixtures.tone(440, BUFFER_SIZE, 1);
+        long fft_nanos = nanos(fft(), samples, 0);
+        for (int type: INSTRUMENTS) {
+            MusicalInstrument instrument = instrument(type);
+            double lowest = scale.noteToFrequency(instrument.realLowestNote()) / 100.0;
+            double highest = scale.noteToFrequency(instrument.realHighestNote()) / 100.0;
+            PitchEstimator e = new GoertzelPitchEstimator(PCMFixtures.SAMPLE_RATE, BUFFER_SIZE, lowest, highest);
+            long goertzel_nanos = nanos(e, samples, 0);
+            assertTrue("instrument " + type + ": " + goertzel_nanos + " ns, FFT " + fft_nanos + " ns",
+                    goertzel_nanos < fft_nanos * 3 / 4);
+        }
+    }
+
+    /*
+     * Bank limited to every instrument, plain and overblown notes
+     */
+    @Test
+    public void goertzelInstrumentRanges()
+    {
+        instrumentRanges(new EstimatorFactory() {
+            @Override
+            public PitchEstimator create(double lowest, double highest)
+            {
+                return new GoertzelPitchEstimator(PCMFixtures.SAMPLE_RATE, BUFFER_SIZE, lowest, highest);
+            }
+        }, false);
+    }
+
+    @Test
+    public void constantQAccuracy()
+    {
+        PitchEstimator e = constantQ();
+        for (double f: FREQUENCIES) {
+            short[] samples = PCMFixtures.tone(f, BUFFER_SIZE, 1);
+            assertEquals(0, PCMFixtures.cents(f, e.estimate(samples, 0, BUFFER_SIZE)), 2);
+        }
+    }
+
+    @Test
+    public void constantQIntonation()
+    {
+        PitchEstimator e = constantQ();
+        double[] offsets = {-45, -30, -10, 10, 30, 45};
+        for (double cents: offsets) {
+            double f = 440 * Math.pow(2, cents / 1200);
+            short[] samples = PCMFixtures.tone(f, BUFFER_SIZE, 2);
+            assertEquals("offset " + cents, 0, PCMFixtures.cents(f, e.estimate(samples, 0, BUFFER_SIZE)), 3);
+        }
+    }
+
+    @Test
+    public void constantQInstrumentRanges()
+    {
+        instrumentRanges(new EstimatorFactory() {
+            @Override
+            public PitchEstimator create(double lowest, double highest)
+            {
+                return new ConstantQPitchEstimator(PCMFixtures.SAMPLE_RATE, BUFFER_SIZE, lowest, highest);
+            }
+        }, false);
+    }
+
+    /*
+     * Top octave reacts faster than the quarter window of the dual FFT,
+     * bottom octave is analysed longer than the quarter window
+     */
+    @Test
+    public void constantQWindows()
+    {
+        ConstantQPitchEstimator e = (ConstantQPitchEstimator) constantQ();
+        double quarter = BUFFER_SIZE / 4.0 / PCMFixtures.SAMPLE_RATE;
+        assertTrue(e.windowTime(e.octaveCount() - 1) < quarter / 4);
+        assertTrue(e.windowTime(0) > quarter);
+        for (int o = 1; o < e.octaveCount(); ++o) {
+            assertTrue(e.windowTime(o) < e.windowTime(o - 1));
+        }
+    }
+
+    @Test
+    public void constantQFollowsChange()
+    {
+        PitchEstimator e = constantQ();
+        // 100ms of c7 after a second of a5
+        short[] samples = PCMFixtures.tone(880, BUFFER_SIZE, 7);
+        short[] next = PCMFixtures.tone(2093, 800, 8);
+        System.arraycopy(next, 0, samples, BUFFER_SIZE - next.length, next.length);
+        assertEquals(0, PCMFixtures.cents(2093, e.estimate(samples, 0, BUFFER_SIZE)), 3);
+    }
+
+    /*
+     * Clean tones are confident, noise is not
+     */
+    @Test
+    public void confidence()
+    {
+        PitchEstimator[] estimators = {fft(), fixedFft(), mcleod(), goertzel(), constantQ(),
+                new SlidingDFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 1024, FREQUENCIES[0], HIGHEST_FREQ)};
+        Random r = new Random(1);
+        short[] noise = new short[BUFFER_SIZE];
+        for (int i = 0; i < BUFFER_SIZE; ++i) {
+            noise[i] = (short) (3000 * r.nextGaussian());
+        }
+
+        for (PitchEstimator e: estimators) {
+            String name = e.getClass().getSimpleName();
+            for (double f: FREQUENCIES) {
+                e.reset();
+                e.estimate(PCMFixtures.tone(f, BUFFER_SIZE, 1), 0, BUFFER_SIZE);
+                assertTrue(name + " " + f, e.confidence() > 0.8);
+                e.estimate(PCMFixtures.tone(f, OVERBLOWN, BUFFER_SIZE, 1), 0, BUFFER_SIZE);
+                assertTrue(name + " overblown " + f, e.confidence() > 0.8);
+            }
+            e.reset();
+            e.estimate(noise, 0, BUFFER_SIZE);
+            assertTrue(name + " noise", e.confidence() < 0.3);
+        }
+    }
+
+    private static double feed(PitchEstimator e, short[] samples, int hop)
+    {
+        double result = 0;
+        for (int i = 0; i + hop <= samples.length; i += hop) {
+            result = e.estimate(samples, i, i + hop);
+        }
+        return result;
+    }
+
+    @Test
+    public void slidingDFTAccuracy()
+    {
+        for (double f: FREQUENCIES) {
+            PitchEstimator e = new SlidingDFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 1024, FREQUENCIES[0], HIGHEST_FREQ);
+            short[] samples = PCMFixtures.tone(f, 4000, 3);
+            assertEquals(0, PCMFixtures.cents(f, feed(e, samples, 400)), 2);
+        }
+    }
+
+    @Test
+    public void slidingDFTFollowsChange()
+    {
+        PitchEstimator e = new SlidingDFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 1024, FREQUENCIES[0], HIGHEST_FREQ);
+        feed(e, PCMFixtures.tone(440, 4000, 4), 400);
+        // window is 1024 samples, it is filled by new tone after three hops
+        short[] next = PCMFixtures.tone(523.25, 1200, 5);
+        assertEquals(0, PCMFixtures.cents(523.25, feed(e, next, 400)), 2);
+    }
+
+    @Test
+    public void silence()
+    {
+        short[] samples = PCMFixtures.silence(BUFFER_SIZE, 1);
+        assertEquals(0, fft().estimate(samples, 0, BUFFER_SIZE), 0);
+        assertEquals(0, mcleod().estimate(samples, 0, BUFFER_SIZE), 0);
+        assertEquals(0, goertzel().estimate(samples, 0, BUFFER_SIZE), 0);
+        assertEquals(0, constantQ().estimate(samples, 0, BUFFER_SIZE), 0);
+        assertEquals(0, fixedFft().estimate(samples, 0, BUFFER_SIZE), 0);
+        PitchEstimator e = new SlidingDFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 1024, FREQUENCIES[0], HIGHEST_FREQ);
+        assertEquals(0, feed(e, samples, 400), 0);
+    }
+
+    /*
+     * One analysis cycle (copy of the latest window from the ring buffer and
+     * estimation) must not allocate anything, listening should not trigger GC.
+     */
+    @Test
+    public void noAllocation()
+    {
+        short[] samples = PCMFixtures.tone(440, BUFFER_SIZE, 6);
+        final AudioRingBuffer ring = new AudioRingBuffer(2 * BUFFER_SIZE);
+        ring.write(samples, BUFFER_SIZE);
+        final short[] window = new short[BUFFER_SIZE];
+        PitchEstimator[] estimators = {
+                fft(),
+                mcleod(),
+                goertzel(),
+                constantQ(),
+                fixedFft(),
+                new SlidingDFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 1024, FREQUENCIES[0], HIGHEST_FREQ)
+        };
+
+        for (final PitchEstimator e: estimators) {
+            long allocated = Allocations.median(new Runnable() {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < 20; ++i) {
+                        ring.latest(window, BUFFER_SIZE);
+                        e.estimate(window, BUFFER_SIZE * 3 / 4, BUFFER_SIZE);
+                    }
+                }
+            });
+            assertTrue(e.getClass().getSimpleName() + " allocated " + allocated, allocated <= 0);
+        }
+    }
+
+    /*
+     * Every estimation fits half of its hop with tenfold margin for a phone
+     * slower than the test machine
+     */
+    @Test
+    public void benchmark()
+    {
+        final int rounds = 10;
+        final long margin = 2 * 10;
+        short[][] fixtures = new short[FREQUENCIES.length][];
+        for (int i = 0; i < FREQUENCIES.length; ++i) {
+            fixtures[i] = PCMFixtures.tone(FREQUENCIES[i], BUFFER_SIZE, i);
+        }
+
+        PitchEstimator[] estimators = {fft(), fft(), shortFft(), mcleod(), goertzel(), constantQ(), fixedFft()};
+        String[] names = {"fft", "fft last quarter zero padded", "fft short window", "mcleod", "goertzel", "constant q",
+                "fixed point fft"};
+        int[] from = {0, BUFFER_SIZE * 3 / 4, BUFFER_SIZE * 3 / 4, 0, 0, 0, 0};
+        int[] updates = {4, 4, 4, 8, 10, 10, 4};
+        for (int e = 0; e < estimators.length; ++e) {
+            for (short[] f: fixtures) {
+                estimators[e].estimate(f, from[e], BUFFER_SIZE);
+            }
+
+            long time = System.nanoTime();
+            for (int r = 0; r < rounds; ++r) {
+                for (short[] f: fixtures) {
+                    assertTrue(estimators[e].estimate(f, from[e], BUFFER_SIZE) > 0);
+                }
+            }
+            time = (System.nanoTime() - time) / rounds / fixtures.length;
+            assertTrue(names[e] + ": " + time + " ns", time < 1000000000L / updates[e] / margin);
+        }
+
+        // streaming estimator, cost of one 50ms hop
+        PitchEstimator e = new SlidingDFTPitchEstimator(PCMFixtures.SAMPLE_RATE, 1024, FREQUENCIES[0], HIGHEST_FREQ);
+        feed(e, fixtures[0], 400);
+        long time = System.nanoTime();
+        for (int r = 0; r < rounds; ++r) {
+            for (short[] f: fixtures) {
+                assertTrue(feed(e, f, 400) > 0);
+            }
+        }
+        time = (System.nanoTime() - time) / rounds / fixtures.length / (BUFFER_SIZE / 400);
+        assertTrue("sliding dft: " + time + " ns per hop", time < 1000000000L / 20 / margin);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PitchEventPoolUnitTest {
+    private volatile int overwritten = 0;
+
+    @Test
+    public void exhausted()
+    {
+        PitchEventPool pool = new PitchEventPool(3);
+        PitchEvent a = pool.obtain();
+        PitchEvent b = pool.obtain();
+        PitchEvent c = pool.obtain();
+        assertNotNull(c);
+        assertNotSame(a, b);
+        assertNotSame(b, c);
+        assertNull(pool.obtain());
+
+        b.recycle();
+        assertSame(b, pool.obtain());
+        assertNull(pool.obtain());
+    }
+
+    /*
+     * Events go round, a recycled event is not reused while others are free
+     */
+    @Test
+    public void roundRobin()
+    {
+        PitchEventPool pool = new PitchEventPool(3);
+        PitchEvent first = pool.obtain();
+        first.recycle();
+        PitchEvent second = pool.obtain();
+        assertNotSame(first, second);
+        second.recycle();
+        assertNotSame(first, pool.obtain());
+        assertSame(first, pool.obtain());
+    }
+
+    /*
+     * Events are handed between threads, none is lost or given twice
+     */
+    @Test
+    public void twoThreads() throws InterruptedException
+    {
+        final PitchEventPool pool = new PitchEventPool(4);
+        final ArrayBlockingQueue<PitchEvent> queue = new ArrayBlockingQueue<>(8);
+        final int count = 100000;
+        Thread consumer = new Thread(new Runnable() {
+            public void run()
+            {
+                try {
+                    for (int i = 0; i < count; ++i) {
+                        PitchEvent event = queue.take();
+                        if (event.frequency != i) {
+                            overwritten++;
+                        }
+                        event.recycle();
+                    }
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < count; ++i) {
+            PitchEvent event;
+            while ((event = pool.obtain()) == null) {
+                Thread.yield();
+            }
+            event.frequency = i;
+            queue.put(event);
+        }
+        consumer.join();
+        assertEquals(0, overwritten);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PitchSlotUnitTest {
+    private volatile int backwards = 0;
+
+    @Test
+    public void empty()
+    {
+        PitchSlot slot = new PitchSlot();
+        assertNull(slot.take());
+
+        PitchEvent event = new PitchEvent();
+        slot.publish(event);
+        assertSame(event, slot.take());
+        assertNull(slot.take());
+    }
+
+    /*
+     * The newest event wins, the replaced one goes back to the pool
+     */
+    @Test
+    public void latestWins()
+    {
+        PitchEventPool pool = new PitchEventPool(3);
+        PitchSlot slot = new PitchSlot();
+        PitchEvent first = pool.obtain();
+        PitchEvent second = pool.obtain();
+        slot.publish(first);
+        slot.publish(second);
+
+        assertFalse(first.in_use);
+        assertTrue(second.in_use);
+        assertEquals(1, slot.replaced());
+        assertSame(second, slot.take());
+    }
+
+    /*
+     * Producer much faster than the consumer never runs out of events of
+     * the smallest pool and the consumer sees the updates in order
+     */
+    @Test
+    public void fastProducer() throws InterruptedException
+    {
+        final PitchEventPool pool = new PitchEventPool(3);
+        final PitchSlot slot = new PitchSlot();
+        final int count = 100000;
+        Thread consumer = new Thread(new Runnable() {
+            public void run()
+            {
+                double last = -1;
+                while (last < count - 1) {
+                    PitchEvent event = slot.take();
+                    if (event == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    if (event.frequency <= last) {
+                        backwards++;
+                    }
+                    last = event.frequency;
+                    event.recycle();
+                }
+            }
+        });
+        consumer.start();
+        int dropped = 0;
+        for (int i = 0; i < count; ++i) {
+            PitchEvent event = pool.obtain();
+            if (event == null) {
+                dropped++;
+                continue;
+            }
+            event.frequency = i;
+            slot.publish(event);
+        }
+        consumer.join();
+        assertEquals(0, dropped);
+        assertEquals(0, backwards);
+    }
+}
@@ -167,15 +167,15 @@ public class ScaleUnitTest {
         assertEquals(88000, s.noteToFrequency(n));
 
         n.set(Note.c5, Note.Accidentals.NONE, false);
-        assertEquals(26163 * 2, s.noteToFrequency(n));
+        assertEquals(52325, s.noteToFrequency(n));
 
         s = new Scale(1);
 
         n.set(Note.f5, Note.Accidentals.NONE, false);
-        assertEquals(36999 * 2, s.noteToFrequency(n));
+        assertEquals(73999, s.noteToFrequency(n));
 
         n.set(Note.f3, Note.Accidentals.NONE, false);
-        assertEquals(36999 / 2, s.noteToFrequency(n));
+        assertEquals(18500, s.noteToFrequency(n));
     }
 
     @Test
@@ -196,6 +196,163 @@ public class ScaleUnitTest {
         assertEquals(n.value(), Note.g4 - 3*12);
     }
 
+    /*
+     * Semitone nearest in cents, the midpoint between a4 and a#4 is
+     * a quarter tone
+     */
+    @Test
+    public void frequencyCents()
+    {
+        Scale s = new Scale(0);
+        int below = (int) (44000 * Math.pow(2, 49 / 1200.0));
+        int above = (int) (44000 * Math.pow(2, 51 / 1200.0));
+        assertEquals(Note.a4, s.frequencyNearestValue(below));
+        assertEquals(Note.a4 + 1, s.frequencyNearestValue(above));
+        assertEquals(49, s.frequencyCents(below, Note.a4));
+        assertEquals(-49, s.frequencyCents(above, Note.a4 + 1));
+        assertEquals(-1200, s.frequencyCents(22000, Note.a4));
+    }
+
+    /*
+     * Frequencies of the notes follow the reference, frequency of a note
+     * resolves to the same note
+     */
+    @Test
+    public void reference()
+    {
+        Scale s = new Scale(0);
+        Note a4 = new Note(Note.a4, Note.Accidentals.NONE, false);
+        assertEquals(44000, s.noteToFrequency(a4));
+        assertEquals(26163, s.noteToFrequency(new Note(0, Note.Accidentals.NONE, false)));
+
+        s.reference(41500);
+        assertEquals(41500, s.reference());
+        assertEquals(41500, s.noteToFrequency(a4));
+        assertEquals(83000, s.noteToFrequency(new Note(Note.a5, Note.Accidentals.NONE, false)));
+        assertEquals(Note.a4, s.frequencyNearestNote(41500).value());
+        assertEquals(Note.a4 + 1, s.frequencyNearestValue(44000));
+
+        for (int value = -60; value < 100; ++value) {
+            Note n = s.absoluteValueToNote(value);
+            assertEquals(value, s.noteAbsoluteValue(n));
+            assertEquals(value, s.frequencyNearestValue(s.noteToFrequency(n)));
+        }
+
+        s.reference(1000);
+        assertEquals(Scale.DEFAULT_REFERENCE, s.reference());
+    }
+
+    /*
+     * Frequency of every note from c1 up resolves back to the note with no
+     * cents off for every reference
+     */
+    @Test
+    public void frequencyRoundTrip()
+    {
+        Scale s = new Scale(0);
+        for (int reference = Scale.MIN_REFERENCE; reference <= Scale.MAX_REFERENCE; ++reference) {
+            s.reference(reference);
+            for (int value = -36; value < 84; ++value) {
+                int freq100 = s.noteToFrequency(s.absoluteValueToNote(value));
+                assertEquals(value, s.frequencyNearestValue(freq100));
+                assertEquals(0, s.frequencyCents(freq100, value));
+            }
+        }
+    }
+
+    private static void assertSameNote(String where, Note expected, Note actual)
+    {
+        assertEquals(where, expected.value(), actual.value());
+        assertEquals(where, expected.accidentals(), actual.accidentals());
+        assertEquals(where, expected.trill(), actual.trill());
+    }
+
+    private static Note note(int value, Note.Accidentals accidentals)
+    {
+        return new Note(value, accidentals, false);
+    }
+
+    private static void assertSteps(Scale s, Note n, int abs_value, int position,
+                                    Note up_half, Note down_half, Note up, Note down)
+    {
+        String where = s.signature() + " " + s.clef() + " " + n.value() + " " + n.accidentals();
+        assertEquals(where, abs_value, s.noteAbsoluteValue(n));
+        assertEquals(where, abs_value + 60, s.noteMidiValue(n));
+        assertEquals(where, (abs_value + 120) % 12, s.noteNameIndex(n));
+        assertEquals(where, position, s.notePosition(n));
+
+        Note actual = new Note(n);
+        s.noteUpHalf(actual);
+        assertSameNote(where + " up half", up_half, actual);
+        actual.set(n);
+        s.noteDownHalf(actual);
+        assertSameNote(where + " down half", down_half, actual);
+        actual.set(n);
+        s.noteUp(actual);
+        assertSameNote(where + " up", up, actual);
+        actual.set(n);
+        s.noteDown(actual);
+        assertSameNote(where + " down", down, actual);
+    }
+
+    /*
+     * Table lookups give the notes of the step by step arithmetic they
+     * replaced, for signatures from seven flats to seven sharps in both clefs
+     */
+    @Test
+    public void noteSteps()
+    {
+        final Note.Accidentals NONE = Note.Accidentals.NONE;
+        final Note.Accidentals RELEASE = Note.Accidentals.RELEASE;
+        final Note.Accidentals SHARP = Note.Accidentals.SHARP;
+        final Note.Accidentals FLAT = Note.Accidentals.FLAT;
+
+        Scale s = new Scale(0, Scale.Clefs.G);
+        assertSteps(s, note(Note.e4, NONE), 4, 2, note(4, SHARP), note(4, FLAT), note(5, NONE), note(2, NONE));
+        assertSteps(s, note(Note.b4, SHARP), 12, 6, note(12, NONE), note(11, NONE), note(12, NONE), note(9, NONE));
+        assertSteps(s, note(Note.f4, FLAT), 4, 3, note(5, NONE), note(4, NONE), note(7, NONE), note(4, NONE));
+
+        s = new Scale(1, Scale.Clefs.G);
+        assertSteps(s, note(Note.f4, NONE), 6, 3, note(7, NONE), note(5, RELEASE), note(7, NONE), note(4, NONE));
+        assertSteps(s, note(Note.f4, RELEASE), 5, 3, note(5, NONE), note(5, FLAT), note(7, NONE), note(4, NONE));
+        assertSteps(s, note(Note.c5, SHARP), 13, 7, note(14, NONE), note(12, NONE), note(14, NONE), note(11, NONE));
+
+        s = new Scale(-1, Scale.Clefs.F);
+        assertSteps(s, note(Note.b3, NONE), -2, -3, note(-1, RELEASE), note(-3, NONE), note(0, NONE), note(-3, NONE));
+        assertSteps(s, note(Note.e3, FLAT), -9, -7, note(-8, NONE), note(-10, NONE), note(-7, NONE), note(-10, NONE));
+
+        s = new Scale(7, Scale.Clefs.G);
+        assertSteps(s, note(Note.b4, NONE), 12, 6, note(12, RELEASE), note(11, RELEASE), note(12, NONE), note(9, NONE));
+        assertSteps(s, note(Note.e4, RELEASE), 4, 2, note(4, NONE), note(4, FLAT), note(5, NONE), note(2, NONE));
+
+        s = new Scale(-7, Scale.Clefs.F);
+        assertSteps(s, note(Note.c3, NONE), -13, -9, note(-12, RELEASE), note(-13, RELEASE), note(-10, NONE), note(-13, NONE));
+        assertSteps(s, note(-19, SHARP), -18, -13, note(-17, NONE), note(-19, RELEASE), note(-17, NONE), note(-20, NONE));
+        assertSameNote("-7 F -17", note(-17, RELEASE), s.absoluteValueToNote(-17));
+        assertSameNote("-7 F -12", note(-12, RELEASE), s.absoluteValueToNote(-12));
+
+        assertSameNote("0 G -6", note(Note.d3, NONE), new Scale(0, Scale.Clefs.G).noteByPosition(-6));
+        assertSameNote("5 G 13", note(23, NONE), new Scale(5, Scale.Clefs.G).noteByPosition(13));
+        assertSameNote("-3 F 5", note(Note.c5, NONE), new Scale(-3, Scale.Clefs.F).noteByPosition(5));
+        assertSameNote("0 G 13", note(Note.c5, SHARP), new Scale(0, Scale.Clefs.G).absoluteValueToNote(13));
+        assertSameNote("1 G 7", note(Note.g4, NONE), new Scale(1, Scale.Clefs.G).absoluteValueToNote(7));
+    }
+
+    /*
+     * Position and note by position are inverse also below c4
+     */
+    @Test
+    public void positionRoundTrip()
+    {
+        for (int clef = 0; clef < 2; ++clef) {
+            Scale s = new Scale(0, clef == 0 ? Scale.Clefs.G : Scale.Clefs.F);
+            for (int position = -30; position <= 40; ++position) {
+                assertEquals(position, s.notePosition(s.noteByPosition(position)));
+            }
+        }
+        assertEquals(-7, new Scale(0).notePosition(new Note(Note.c3, Note.Accidentals.NONE, false)));
+    }
+
     @Test
     public void midiNoteTest()
     {
@@ -0,0 +1,125 @@
+/*
+ * This file is part of PlayRecorder.
+ *
+ * PlayRecorder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlayRecorder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.halman.playrecorder;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SilenceGateUnitTest {
+    private static final int UPDATES = 8;
+    private static final int HOP = PCMFixtures.SAMPLE_RATE / UPDATES;
+
+    private static short[] noise(double rms, int length, long seed)
+    {
+        Random r = new Random(seed);
+        short[] result = new short[length];
+        for (int i = 0; i < length; ++i) {
+            result[i] = (short) (rms * r.nextGaussian());
+        }
+        return result;
+    }
+
+    // feeds the samples hop by hop, returns result of the last hop
+    private static boolean feed(SilenceGate gate, short[] samples)
+    {
+        boolean silent = true;
+        for (int from = 0; from + HOP <= samples.length; from += HOP) {
+            silent = gate.silent(samples, from, from + HOP);
+        }
+        return silent;
+    }
+
+    @Test
+    public void silence()
+    {
+        SilenceGate gate = new SilenceGate(UPDATES);
+        assertTrue(feed(gate, PCMFixtures.silence(5 * PCMFixtures.SAMPLE_RATE, 1)));
+    }
+
+    @Test
+    public void toneAfterSilence()
+    {
+        SilenceGate gate = new SilenceGate(UPDATES);
+        feed(gate, PCMFixtures.silence(5 * PCMFixtures.SAMPLE_RATE, 2));
+        short[] tone = PCMFixtures.tone(440, HOP, 3);
+        assertFalse(gate.silent(tone, 0, HOP));
+    }
+
+    @Test
+    public void longNoteKeepsGateOpen()
+    {
+        SilenceGate gate = new SilenceGate(UPDATES);
+        feed(gate, noise(50, PCMFixtures.SAMPLE_RATE, 4));
+        // a minute of playing
+        short[] tone = PCMFixtures.tone(440, HOP, 5);
+        for (int i = 0; i < 60 * UPDATES; ++i) {
+            assertFalse(gate.silent(tone, 0, HOP));
+        }
+    }
+
+    @Test
+    public void followsRoomNoise()
+    {
+        SilenceGate gate = new SilenceGate(UPDATES);
+        feed(gate, PCMFixtures.silence(PCMFixtures.SAMPLE_RATE, 6));
+        // microphone gain raised, louder noise is taken as sound for a while
+        short[] noise = noise(300, 40 * PCMFixtures.SAMPLE_RATE, 7);
+        assertFalse(gate.silent(noise, 0, HOP));
+        assertTrue(feed(gate, noise));
+        assertTrue(gate.noiseFloor() > 200);
+
+        // tone well above the new noise floor opens the gate
+        short[] tone = PCMFixtures.tone(440, HOP, 8);
+        assertFalse(gate.silent(tone, 0, HOP));
+    }
+
+    /*
+     * Soft note growing slowly after a noisy pause, the floor left by the
+     * pause must not follow the note up
+     */
+    @Test
+    public void quietOnsetAfterNoisyPause()
+    {
+        SilenceGate gate = new SilenceGate(UPDATES);
+        feed(gate, noise(20, 5 * PCMFixtures.SAMPLE_RATE, 12));
+        assertTrue(feed(gate, noise(45, 10 * PCMFixtures.SAMPLE_RATE, 13)));
+
+        // rms grows from the pause level by 12 dB per second, then holds
+        short[] onset = noise(20, 2 * PCMFixtures.SAMPLE_RATE, 14);
+        for (int i = 0; i < onset.length; ++i) {
+            double t = Math.min(1.0, (double) i / PCMFixtures.SAMPLE_RATE);
+            double amplitude = 45 * Math.sqrt(2) * Math.pow(10, 12 * t / 20);
+            onset[i] += (short) (amplitude * Math.sin(2 * Math.PI * 440 * i / PCMFixtures.SAMPLE_RATE));
+        }
+        assertFalse(feed(gate, onset));
+    }
+
+    @Test
+    public void quieterNoise()
+    {
+        SilenceGate gate = new SilenceGate(UPDATES);
+        feed(gate, noise(300, 30 * PCMFixtures.SAMPLE_RATE, 9));
+        feed(gate, noise(30, PCMFixtures.SAMPLE_RATE, 10));
+        short[] quiet = noise(200, HOP, 11);
+        assertFalse(gate.silent(quiet, 0, HOP));
+    }
+}